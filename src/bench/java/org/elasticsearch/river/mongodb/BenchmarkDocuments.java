@@ -0,0 +1,88 @@
+package org.elasticsearch.river.mongodb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.bson.BSON;
+import org.bson.types.ObjectId;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBDecoder;
+
+/*
+ * Synthetic documents for the benchmarks. The random generator has a fixed
+ * seed so a document of a given size is the same for each run and the
+ * results can be compared across commits. Every 4 fields there is a string,
+ * a number, a date and a sub-document with an array.
+ */
+public abstract class BenchmarkDocuments {
+
+	private static final long SEED = 42;
+
+	/*
+	 * Fields removed by the exclude benchmarks: top level fields, a field of
+	 * the sub-documents and a field of the documents of their arrays.
+	 */
+	public static final Set<String> EXCLUDE_FIELDS = new HashSet<String>(
+			Arrays.asList("string0", "number1", "object3.name",
+					"object7.items.value"));
+
+	public static final Set<String> INCLUDE_FIELDS = new HashSet<String>(
+			Arrays.asList("string0", "date2", "object3.name"));
+
+	public static DBObject document(int fields) {
+		Random random = new Random(SEED);
+		BasicDBObject document = new BasicDBObject("_id", new ObjectId(
+				new Date(1380000000000L), random.nextInt()));
+		for (int i = 0; i < fields; i++) {
+			switch (i % 4) {
+			case 0:
+				document.put("string" + i, string(random, 32));
+				break;
+			case 1:
+				document.put("number" + i, random.nextLong());
+				break;
+			case 2:
+				document.put("date" + i, new Date(1380000000000L + i));
+				break;
+			default:
+				List<DBObject> items = new ArrayList<DBObject>();
+				for (int j = 0; j < 3; j++) {
+					items.add(new BasicDBObject("key", j).append("value",
+							string(random, 8)));
+				}
+				document.put("object" + i,
+						new BasicDBObject("name", string(random, 16)).append(
+								"items", items));
+			}
+		}
+		return document;
+	}
+
+	public static byte[] encode(DBObject document) {
+		return BSON.encode(document);
+	}
+
+	/*
+	 * A new copy of the document, as read by the cursors of the river.
+	 */
+	public static DBObject decode(byte[] bytes) {
+		return DefaultDBDecoder.FACTORY.create().decode(bytes,
+				(DBCollection) null);
+	}
+
+	private static String string(Random random, int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = (char) ('a' + random.nextInt(26));
+		}
+		return new String(chars);
+	}
+}
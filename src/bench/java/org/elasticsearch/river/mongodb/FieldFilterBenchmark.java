@@ -0,0 +1,71 @@
+package org.elasticsearch.river.mongodb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.river.mongodb.util.FieldFilter;
+import org.elasticsearch.river.mongodb.util.MongoDBHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.DBObject;
+
+/*
+ * Filters modify the document: each benchmark decodes a new copy, decode
+ * alone is the baseline to subtract.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class FieldFilterBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	private int fields;
+
+	private byte[] bytes;
+	private FieldFilter excludeFilter;
+	private FieldFilter includeFilter;
+
+	@Setup
+	public void setup() {
+		bytes = BenchmarkDocuments.encode(BenchmarkDocuments.document(fields));
+		excludeFilter = FieldFilter.exclude(BenchmarkDocuments.EXCLUDE_FIELDS);
+		includeFilter = FieldFilter.include(BenchmarkDocuments.INCLUDE_FIELDS);
+	}
+
+	@Benchmark
+	public DBObject decode() {
+		return BenchmarkDocuments.decode(bytes);
+	}
+
+	/*
+	 * Compiles the exclude fields for each document.
+	 */
+	@Benchmark
+	public DBObject applyExcludeFields() {
+		return MongoDBHelper.applyExcludeFields(
+				BenchmarkDocuments.decode(bytes),
+				BenchmarkDocuments.EXCLUDE_FIELDS);
+	}
+
+	@Benchmark
+	public DBObject excludeFilter() {
+		return excludeFilter.apply(BenchmarkDocuments.decode(bytes));
+	}
+
+	@Benchmark
+	public DBObject includeFilter() {
+		return includeFilter.apply(BenchmarkDocuments.decode(bytes));
+	}
+}
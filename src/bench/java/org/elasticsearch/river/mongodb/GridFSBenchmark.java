@@ -0,0 +1,74 @@
+package org.elasticsearch.river.mongodb;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.river.mongodb.util.MongoDBHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.gridfs.GridFSDBFile;
+
+/*
+ * Source of a GridFS file (base64 content and metadata). The file is read
+ * from memory instead of the chunks collection.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class GridFSBenchmark {
+
+	@Param({ "1024", "65536", "1048576" })
+	private int length;
+
+	@Param({ "JSON", "SMILE" })
+	private String sourceFormat;
+
+	private XContentType format;
+	private GridFSDBFile file;
+
+	@Setup
+	public void setup() {
+		format = XContentType.valueOf(sourceFormat);
+		final byte[] content = new byte[length];
+		new Random(42).nextBytes(content);
+		file = new GridFSDBFile() {
+			@Override
+			public InputStream getInputStream() {
+				return new ByteArrayInputStream(content);
+			}
+		};
+		file.put("filename", "benchmark.bin");
+		file.put("contentType", "application/octet-stream");
+		file.put("length", (long) length);
+		file.put("chunkSize", 262144L);
+		file.put("uploadDate", new Date(1380000000000L));
+		file.put("md5", "d41d8cd98f00b204e9800998ecf8427e");
+		file.put("metadata", BenchmarkDocuments.document(10));
+	}
+
+	@Benchmark
+	public BytesReference serialize() throws IOException {
+		return MongoDBHelper.serialize(file,
+				XContentFactory.contentBuilder(format)).bytes();
+	}
+}
@@ -0,0 +1,70 @@
+package org.elasticsearch.river.mongodb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BasicBSONEncoder;
+import org.bson.types.BSONTimestamp;
+import org.elasticsearch.river.mongodb.util.LazyOplogDecoder;
+import org.elasticsearch.river.mongodb.util.MongoDBHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBDecoder;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBDecoder;
+
+/*
+ * Decoding of an indexed oplog insert entry: eager (default) or lazy
+ * (options.lazy_decoding) with "o" decoded once the entry is filtered.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class OplogDecodingBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int fields;
+
+	private byte[] entry;
+	private final DBDecoder eagerDecoder = DefaultDBDecoder.FACTORY.create();
+	private final DBDecoder lazyDecoder = LazyOplogDecoder.FACTORY.create();
+
+	@Setup
+	public void setup() {
+		entry = new BasicBSONEncoder().encode(new BasicDBObject(
+				MongoDBRiver.OPLOG_TIMESTAMP, new BSONTimestamp(1380000000, 1))
+				.append(MongoDBRiver.OPLOG_OPERATION,
+						MongoDBRiver.OPLOG_INSERT_OPERATION)
+				.append(MongoDBRiver.OPLOG_NAMESPACE, "mydb.mycollection")
+				.append(MongoDBRiver.OPLOG_OBJECT,
+						BenchmarkDocuments.document(fields)));
+	}
+
+	@Benchmark
+	public DBObject eager() {
+		DBObject item = eagerDecoder.decode(entry, (DBCollection) null);
+		item.get(MongoDBRiver.OPLOG_OPERATION);
+		return MongoDBHelper.decode(item.get(MongoDBRiver.OPLOG_OBJECT));
+	}
+
+	@Benchmark
+	public DBObject lazy() {
+		DBObject item = lazyDecoder.decode(entry, (DBCollection) null);
+		item.get(MongoDBRiver.OPLOG_OPERATION);
+		return MongoDBHelper.decode(item.get(MongoDBRiver.OPLOG_OBJECT));
+	}
+}
@@ -0,0 +1,63 @@
+package org.elasticsearch.river.mongodb;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.types.BSONTimestamp;
+import org.elasticsearch.river.mongodb.util.MongoDBProjectionHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.DBObject;
+
+/*
+ * Query and projection of the oplog cursor, built each time the cursor is
+ * opened. The custom filter (options.filter) is parsed for each query.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class OplogFilterBenchmark {
+
+	private final BSONTimestamp timestamp = new BSONTimestamp(1380000000, 1);
+	private MongoDBRiverDefinition definition;
+	private MongoDBRiverDefinition filterDefinition;
+
+	@Setup
+	public void setup() {
+		definition = new MongoDBRiverDefinition.Builder().mongoDb("mydb")
+				.mongoCollection("mycollection")
+				.excludeFields(BenchmarkDocuments.EXCLUDE_FIELDS).build();
+		filterDefinition = new MongoDBRiverDefinition.Builder()
+				.mongoDb("mydb")
+				.mongoCollection("mycollection")
+				.mongoFilter(
+						"{\"o.name\": {\"$in\": [\"river\", \"mongodb\"]}, \"o.count\": {\"$gt\": 10}}")
+				.build();
+	}
+
+	@Benchmark
+	public DBObject oplogFilter() {
+		return MongoDBRiver.getOplogFilter(definition, timestamp);
+	}
+
+	@Benchmark
+	public DBObject oplogFilterWithCustomFilter() {
+		return MongoDBRiver.getOplogFilter(filterDefinition, timestamp);
+	}
+
+	@Benchmark
+	public DBObject oplogProjection() {
+		return MongoDBProjectionHelper.getOplogProjection(definition);
+	}
+}
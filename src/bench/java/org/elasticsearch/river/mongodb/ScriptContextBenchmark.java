@@ -0,0 +1,61 @@
+package org.elasticsearch.river.mongodb;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.river.mongodb.util.MongoDBHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Per document cost of the script context: parsing "{}" (previous
+ * implementation) against resetting a ScriptContext.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class ScriptContextBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	private int fields;
+
+	private final ScriptContext scriptContext = new ScriptContext();
+	private Map<String, Object> document;
+
+	@Setup
+	public void setup() {
+		document = MongoDBHelper.asMap(BenchmarkDocuments.document(fields));
+	}
+
+	@Benchmark
+	public Map<String, Object> parseContext() throws IOException {
+		Map<String, Object> ctx = XContentFactory.xContent(XContentType.JSON)
+				.createParser("{}").mapAndClose();
+		ctx.put("document", document);
+		ctx.put("operation", MongoDBRiver.OPLOG_INSERT_OPERATION);
+		ctx.put("id", "51f2c3b1e4b0a4d8c6a9e3f1");
+		return ctx;
+	}
+
+	@Benchmark
+	public Map<String, Object> resetContext() {
+		return scriptContext.reset(document,
+				MongoDBRiver.OPLOG_INSERT_OPERATION,
+				"51f2c3b1e4b0a4d8c6a9e3f1");
+	}
+}
@@ -0,0 +1,56 @@
+package org.elasticsearch.river.mongodb;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.river.mongodb.util.BSONXContentSerializer;
+import org.elasticsearch.river.mongodb.util.MongoDBHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Source of the documents built by the indexer (build()) in each source
+ * format (index.source_format).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class SerializeBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	private int fields;
+
+	@Param({ "JSON", "SMILE" })
+	private String sourceFormat;
+
+	private XContentType format;
+	private Map<String, Object> document;
+
+	@Setup
+	public void setup() {
+		format = XContentType.valueOf(sourceFormat);
+		document = MongoDBHelper.asMap(BenchmarkDocuments.document(fields));
+	}
+
+	@Benchmark
+	public BytesReference serialize() throws IOException {
+		return BSONXContentSerializer.serialize(document,
+				XContentFactory.contentBuilder(format)).bytes();
+	}
+}
@@ -37,8 +37,9 @@ public class RestMongoDBRiverAction extends BaseRestHandler {
 		this.riversService = injector.getInstance(RiversService.class);
 		controller.registerHandler(RestRequest.Method.GET, "/_river/"
 				+ MongoDBRiver.TYPE + "/{action}", this);
-		controller.registerHandler(RestRequest.Method.POST, "/_river/"
-				+ MongoDBRiver.TYPE + "/{river}/{action}", this);
+		// _start and _stop change the river: POST only
+		controller.registerHandler(RestRequest.Method.GET, "/_river/"
+				+ MongoDBRiver.TYPE + "/{river}/_stats", this);
 		controller.registerHandler(RestRequest.Method.POST, "/_river/"
 				+ MongoDBRiver.TYPE + "/{river}/{action}", this);
 	}
@@ -57,9 +58,19 @@ public class RestMongoDBRiverAction extends BaseRestHandler {
 			action = "stop";
 		} else if (uri.endsWith("_list")) {
 			action = "list";
+		} else if (uri.endsWith("_stats")) {
+			action = "stats";
+		}
+
+		if (("start".equals(action) || "stop".equals(action))
+				&& request.method() != RestRequest.Method.POST) {
+			respond(false, request, channel, "Use POST to " + action
+					+ " a river", RestStatus.METHOD_NOT_ALLOWED);
+			return;
 		}
 
-		if ("start".equals(action) || "stop".equals(action)) {
+		if ("start".equals(action) || "stop".equals(action)
+				|| "stats".equals(action)) {
 			if (riverName == null || riverName.isEmpty()) {
 				respond(false, request, channel,
 						"Parameter 'river' is required", RestStatus.BAD_REQUEST);
@@ -83,6 +94,23 @@ public class RestMongoDBRiverAction extends BaseRestHandler {
 				errorResponse(request, channel, e);
 			}
 
+		} else if ("stats".equals(action)) {
+			Map<String, Object> stats = MongoDBRiverHelper.getRiverStats(
+					client, riverName);
+			if (stats == null) {
+				respond(false, request, channel, "No statistics for river: "
+						+ riverName, RestStatus.NOT_FOUND);
+				return;
+			}
+			try {
+				XContentBuilder builder = RestXContentBuilder
+						.restContentBuilder(request);
+				builder.map(stats);
+				channel.sendResponse(new XContentRestResponse(request,
+						RestStatus.OK, builder));
+			} catch (IOException e) {
+				errorResponse(request, channel, e);
+			}
 		} else {
 //			String status = "started";
 			boolean enabled = true;
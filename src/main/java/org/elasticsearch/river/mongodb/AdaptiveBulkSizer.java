@@ -0,0 +1,99 @@
+package org.elasticsearch.river.mongodb;
+
+import java.util.concurrent.BlockingQueue;
+
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+
+/*
+ * Adjusts the bulk size and the bulk timeout of an indexer from the bulk
+ * responses (additive increase, multiplicative decrease):
+ * - rejections or took time above the target latency: the bulk size is
+ * halved and the timeout doubled to send fewer and smaller requests.
+ * - backlog in the queue: the bulk size grows and the timeout goes back to
+ * its minimum, bulks are filled without waiting.
+ * - no backlog: the timeout is halved to index documents with low latency.
+ */
+public class AdaptiveBulkSizer implements ActionListener<BulkResponse> {
+
+	private final int minBulkSize;
+	private final int maxBulkSize;
+	private final long minBulkTimeout;
+	private final long maxBulkTimeout;
+	private final long targetLatency;
+	private final int step;
+	private final BlockingQueue<?> queue;
+
+	private int bulkSize;
+	private long bulkTimeout;
+
+	public AdaptiveBulkSizer(MongoDBRiverDefinition definition,
+			BlockingQueue<?> queue) {
+		this.minBulkSize = definition.getMinBulkSize();
+		this.maxBulkSize = Math.max(minBulkSize, definition.getMaxBulkSize());
+		this.minBulkTimeout = definition.getMinBulkTimeout().millis();
+		this.maxBulkTimeout = Math.max(minBulkTimeout, definition
+				.getMaxBulkTimeout().millis());
+		this.targetLatency = definition.getTargetBulkLatency().millis();
+		this.step = Math.max(1, (maxBulkSize - minBulkSize) / 10);
+		this.queue = queue;
+		this.bulkSize = clamp(definition.getBulkSize(), minBulkSize,
+				maxBulkSize);
+		this.bulkTimeout = clamp(definition.getBulkTimeout().millis(),
+				minBulkTimeout, maxBulkTimeout);
+	}
+
+	public synchronized int getBulkSize() {
+		return bulkSize;
+	}
+
+	public synchronized TimeValue getBulkTimeout() {
+		return TimeValue.timeValueMillis(bulkTimeout);
+	}
+
+	@Override
+	public void onResponse(BulkResponse response) {
+		int rejected = 0;
+		for (BulkItemResponse item : response.getItems()) {
+			if (item.isFailed() && item.getFailureMessage() != null
+					&& item.getFailureMessage().contains(
+							EsRejectedExecutionException.class.getSimpleName())) {
+				rejected++;
+			}
+		}
+		update(response.getTookInMillis(), rejected, queue.size());
+	}
+
+	@Override
+	public void onFailure(Throwable e) {
+		if (ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException) {
+			update(0, 1, queue.size());
+		}
+	}
+
+	public synchronized void update(long tookInMillis, int rejected,
+			int queueDepth) {
+		if (rejected > 0 || tookInMillis > targetLatency) {
+			bulkSize = Math.max(minBulkSize, bulkSize / 2);
+			bulkTimeout = Math.min(maxBulkTimeout,
+					Math.max(1, bulkTimeout * 2));
+		} else if (queueDepth >= bulkSize) {
+			bulkSize = Math.min(maxBulkSize, bulkSize + step);
+			bulkTimeout = minBulkTimeout;
+		} else {
+			bulkTimeout = Math.max(minBulkTimeout, bulkTimeout / 2);
+		}
+	}
+
+	private static int clamp(int value, int min, int max) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	private static long clamp(long value, long min, long max) {
+		return Math.max(min, Math.min(max, value));
+	}
+}
@@ -0,0 +1,111 @@
+package org.elasticsearch.river.mongodb;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/*
+ * Tracks the entries sent to the indexers by lane (the oplog or a range of
+ * the initial import). Entries of a lane are acknowledged in any order, the
+ * checkpoint of the lane is its last entry acknowledged together with all
+ * the entries added before it. Once an entry of a lane has failed the
+ * checkpoint of the lane stays before it.
+ */
+public class CheckpointTracker<L, P> {
+
+	private static class Lane<P> {
+		private long nextSequence = 0;
+		private long failedSequence = Long.MAX_VALUE;
+		private final TreeMap<Long, P> pending = new TreeMap<Long, P>();
+		private final TreeMap<Long, P> acknowledged = new TreeMap<Long, P>();
+	}
+
+	private final Map<L, Lane<P>> lanes = new HashMap<L, Lane<P>>();
+	private final Map<L, P> checkpoints = new LinkedHashMap<L, P>();
+	private int pending = 0;
+
+	/**
+	 * Returns the sequence number to acknowledge the entry.
+	 */
+	public synchronized long add(final L lane, final P position) {
+		Lane<P> state = lanes.get(lane);
+		if (state == null) {
+			state = new Lane<P>();
+			lanes.put(lane, state);
+		}
+		long sequence = state.nextSequence++;
+		state.pending.put(sequence, position);
+		pending++;
+		return sequence;
+	}
+
+	public synchronized void acknowledge(final L lane, final long sequence) {
+		remove(lane, sequence, false);
+	}
+
+	/**
+	 * The entry and all the entries of the lane added after it are not
+	 * checkpointed anymore.
+	 */
+	public synchronized void fail(final L lane, final long sequence) {
+		remove(lane, sequence, true);
+	}
+
+	public synchronized boolean isFailed(final L lane) {
+		Lane<P> state = lanes.get(lane);
+		return state != null && state.failedSequence != Long.MAX_VALUE;
+	}
+
+	private void remove(final L lane, final long sequence, final boolean failed) {
+		Lane<P> state = lanes.get(lane);
+		if (state == null) {
+			return;
+		}
+		P position = state.pending.remove(sequence);
+		if (position == null) {
+			return;
+		}
+		pending--;
+		if (failed) {
+			state.failedSequence = Math.min(state.failedSequence, sequence);
+			state.acknowledged.tailMap(state.failedSequence).clear();
+		} else if (sequence < state.failedSequence) {
+			state.acknowledged.put(sequence, position);
+		}
+		long next = state.pending.isEmpty() ? state.failedSequence : Math.min(
+				state.pending.firstKey(), state.failedSequence);
+		SortedMap<Long, P> done = state.acknowledged.headMap(next);
+		if (!done.isEmpty()) {
+			checkpoints.remove(lane);
+			checkpoints.put(lane, done.get(done.lastKey()));
+			done.clear();
+		}
+		if (pending == 0) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the checkpoints which moved since the previous call.
+	 */
+	public synchronized Map<L, P> drainCheckpoints() {
+		Map<L, P> drained = new LinkedHashMap<L, P>(checkpoints);
+		checkpoints.clear();
+		return drained;
+	}
+
+	public synchronized int getPending() {
+		return pending;
+	}
+
+	/**
+	 * Waits until all the entries added have been acknowledged.
+	 */
+	public synchronized void waitForAll() throws InterruptedException {
+		while (pending > 0) {
+			wait();
+		}
+	}
+}
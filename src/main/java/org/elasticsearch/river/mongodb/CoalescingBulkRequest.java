@@ -0,0 +1,125 @@
+package org.elasticsearch.river.mongodb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+
+/*
+ * Collects the requests of a bulk keeping only the last effective operation
+ * of each document. An index or delete request replaces the previous requests
+ * of the same document, partial updates are applied on top of them.
+ */
+@SuppressWarnings("rawtypes")
+public class CoalescingBulkRequest {
+
+	private final Map<List<String>, List<ActionRequest>> requests = new LinkedHashMap<List<String>, List<ActionRequest>>();
+	private int numberOfActions = 0;
+	private long estimatedSizeInBytes = 0;
+
+	// Same estimation as BulkRequest for the action line
+	private final static int REQUEST_OVERHEAD = 50;
+
+	/*
+	 * routing and parent are part of the key: a document moved to another
+	 * shard keeps all its operations.
+	 */
+	public void add(String index, String type, String id, String routing,
+			String parent, ActionRequest request) {
+		List<String> key = Arrays.asList(index, type, id, routing, parent);
+		List<ActionRequest> documentRequests = requests.get(key);
+		if (documentRequests == null || !(request instanceof UpdateRequest)) {
+			// move the document to the end to keep the order of operations
+			List<ActionRequest> replaced = requests.remove(key);
+			if (replaced != null) {
+				for (ActionRequest replacedRequest : replaced) {
+					estimatedSizeInBytes -= sizeInBytes(replacedRequest);
+				}
+			}
+			documentRequests = new ArrayList<ActionRequest>(1);
+			requests.put(key, documentRequests);
+		}
+		documentRequests.add(request);
+		estimatedSizeInBytes += sizeInBytes(request);
+		numberOfActions++;
+	}
+
+	/*
+	 * Number of operations added, including the coalesced ones.
+	 */
+	public int numberOfActions() {
+		return numberOfActions;
+	}
+
+	public int numberOfRequests() {
+		int count = 0;
+		for (List<ActionRequest> documentRequests : requests.values()) {
+			count += documentRequests.size();
+		}
+		return count;
+	}
+
+	/*
+	 * Estimated size of the requests to send: sources and scripts.
+	 */
+	public long estimatedSizeInBytes() {
+		return estimatedSizeInBytes;
+	}
+
+	/*
+	 * Documents of the bulk: index, type, id, routing and parent.
+	 */
+	public Set<List<String>> keys() {
+		return new HashSet<List<String>>(requests.keySet());
+	}
+
+	public void clear() {
+		requests.clear();
+		numberOfActions = 0;
+		estimatedSizeInBytes = 0;
+	}
+
+	private static long sizeInBytes(ActionRequest request) {
+		long size = REQUEST_OVERHEAD;
+		if (request instanceof IndexRequest) {
+			IndexRequest indexRequest = (IndexRequest) request;
+			if (indexRequest.source() != null) {
+				size += indexRequest.source().length();
+			}
+		} else if (request instanceof UpdateRequest) {
+			UpdateRequest updateRequest = (UpdateRequest) request;
+			if (updateRequest.doc() != null
+					&& updateRequest.doc().source() != null) {
+				size += updateRequest.doc().source().length();
+			}
+			if (updateRequest.script() != null) {
+				size += updateRequest.script().length();
+			}
+		}
+		return size;
+	}
+
+	public BulkRequest addTo(BulkRequest bulk) {
+		for (List<ActionRequest> documentRequests : requests.values()) {
+			for (ActionRequest request : documentRequests) {
+				if (request instanceof IndexRequest) {
+					bulk.add((IndexRequest) request);
+				} else if (request instanceof DeleteRequest) {
+					bulk.add((DeleteRequest) request);
+				} else if (request instanceof UpdateRequest) {
+					bulk.add((UpdateRequest) request);
+				}
+			}
+		}
+		return bulk;
+	}
+}
@@ -0,0 +1,48 @@
+package org.elasticsearch.river.mongodb;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+import java.util.Date;
+
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/*
+ * Writes the statistics to an index:
+ * - with an id the document is overwritten (_river/{river}/_mongodbstats)
+ * - without id a document is added at each interval with the river name and
+ * a timestamp (stats index)
+ */
+public class IndexStatsReporter implements StatsReporter {
+
+	public final static String RIVER_FIELD = "river";
+	public final static String TIMESTAMP_FIELD = "@timestamp";
+
+	private final Client client;
+	private final String riverName;
+	private final String index;
+	private final String type;
+	private final String id;
+
+	public IndexStatsReporter(Client client, String riverName, String index,
+			String type, String id) {
+		this.client = client;
+		this.riverName = riverName;
+		this.index = index;
+		this.type = type;
+		this.id = id;
+	}
+
+	@Override
+	public void report(RiverStats stats, int queueDepth) throws Exception {
+		XContentBuilder source = jsonBuilder().startObject();
+		if (id == null) {
+			source.field(RIVER_FIELD, riverName);
+			source.field(TIMESTAMP_FIELD, new Date());
+		}
+		stats.toXContent(source, queueDepth);
+		source.endObject();
+		client.prepareIndex(index, type, id).setSource(source).execute()
+				.actionGet();
+	}
+}
@@ -0,0 +1,217 @@
+package org.elasticsearch.river.mongodb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.types.BSONTimestamp;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+import com.mongodb.util.JSON;
+
+/*
+ * Progress of the initial import of a collection. The _id space is split in
+ * ranges, for each of them the last _id indexed is tracked so the import can
+ * be resumed after a restart. With a sharded collection each shard has its
+ * own import.
+ */
+public class InitialImport {
+
+	public final static String TIMESTAMP_FIELD = "_ts";
+	public final static String RANGES_FIELD = "ranges";
+	public final static String LOWER_FIELD = "lower";
+	public final static String UPPER_FIELD = "upper";
+	public final static String LAST_ID_FIELD = "last_id";
+	public final static String DONE_FIELD = "done";
+
+	public static class Range {
+		private final InitialImport initialImport;
+		private final Object lower;
+		private final Object upper;
+		private volatile Object lastId;
+		private volatile boolean done;
+
+		private Range(InitialImport initialImport, Object lower, Object upper) {
+			this.initialImport = initialImport;
+			this.lower = lower;
+			this.upper = upper;
+		}
+
+		public InitialImport getInitialImport() {
+			return initialImport;
+		}
+
+		public Object getLower() {
+			return lower;
+		}
+
+		public Object getUpper() {
+			return upper;
+		}
+
+		public Object getLastId() {
+			return lastId;
+		}
+
+		public void setLastId(Object lastId) {
+			this.lastId = lastId;
+		}
+
+		public boolean isDone() {
+			return done;
+		}
+
+		public void setDone(boolean done) {
+			this.done = done;
+		}
+
+		/*
+		 * Inclusive lower bound of the documents still to be imported
+		 */
+		public Object getResumeFrom() {
+			return lastId != null ? lastId : lower;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + lower + ", " + upper + ") last_id: " + lastId
+					+ " done: " + done;
+		}
+	}
+
+	private final String shard;
+	private final BSONTimestamp timestamp;
+	private final List<Range> ranges = new ArrayList<Range>();
+
+	public InitialImport(BSONTimestamp timestamp, List<Object> splitPoints) {
+		this(null, timestamp, splitPoints);
+	}
+
+	/*
+	 * Create ranges delimited by the split points (null bounds are open).
+	 * The shard is the replica set name, null if the collection is not
+	 * sharded.
+	 */
+	public InitialImport(String shard, BSONTimestamp timestamp,
+			List<Object> splitPoints) {
+		this.shard = shard;
+		this.timestamp = timestamp;
+		for (int i = 0; i <= splitPoints.size(); i++) {
+			Object lower = i == 0 ? null : splitPoints.get(i - 1);
+			Object upper = i == splitPoints.size() ? null : splitPoints.get(i);
+			ranges.add(new Range(this, lower, upper));
+		}
+	}
+
+	/*
+	 * (partitions - 1) evenly spaced split points from the candidates sorted
+	 * by _id (e.g. the split keys of the splitVector command).
+	 */
+	public static List<Object> selectSplitPoints(List<Object> candidates,
+			int partitions) {
+		List<Object> splitPoints = new ArrayList<Object>();
+		if (partitions < 2 || candidates.isEmpty()) {
+			return splitPoints;
+		}
+		if (candidates.size() < partitions) {
+			splitPoints.addAll(candidates);
+			return splitPoints;
+		}
+		for (int i = 1; i < partitions; i++) {
+			splitPoints.add(candidates.get((int) ((long) (candidates.size() + 1)
+					* i / partitions) - 1));
+		}
+		return splitPoints;
+	}
+
+	private InitialImport(String shard, BSONTimestamp timestamp) {
+		this.shard = shard;
+		this.timestamp = timestamp;
+	}
+
+	public String getShard() {
+		return shard;
+	}
+
+	public BSONTimestamp getTimestamp() {
+		return timestamp;
+	}
+
+	public List<Range> getRanges() {
+		return Collections.unmodifiableList(ranges);
+	}
+
+	public List<Range> getPendingRanges() {
+		List<Range> pending = new ArrayList<Range>();
+		for (Range range : ranges) {
+			if (!range.isDone()) {
+				pending.add(range);
+			}
+		}
+		return pending;
+	}
+
+	public boolean isDone() {
+		return getPendingRanges().isEmpty();
+	}
+
+	public XContentBuilder toXContent(XContentBuilder builder)
+			throws IOException {
+		builder.field(TIMESTAMP_FIELD, JSON.serialize(timestamp));
+		builder.field(DONE_FIELD, isDone());
+		builder.startArray(RANGES_FIELD);
+		for (Range range : ranges) {
+			builder.startObject();
+			if (range.getLower() != null) {
+				builder.field(LOWER_FIELD, JSON.serialize(range.getLower()));
+			}
+			if (range.getUpper() != null) {
+				builder.field(UPPER_FIELD, JSON.serialize(range.getUpper()));
+			}
+			if (range.getLastId() != null) {
+				builder.field(LAST_ID_FIELD, JSON.serialize(range.getLastId()));
+			}
+			builder.field(DONE_FIELD, range.isDone());
+			builder.endObject();
+		}
+		builder.endArray();
+		return builder;
+	}
+
+	public static InitialImport parse(Map<String, Object> source) {
+		return parse(null, source);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static InitialImport parse(String shard, Map<String, Object> source) {
+		Object timestamp = source.get(TIMESTAMP_FIELD);
+		if (timestamp == null) {
+			return null;
+		}
+		InitialImport initialImport = new InitialImport(shard,
+				(BSONTimestamp) JSON.parse(timestamp.toString()));
+		List<Map<String, Object>> ranges = (List<Map<String, Object>>) source
+				.get(RANGES_FIELD);
+		if (ranges != null) {
+			for (Map<String, Object> item : ranges) {
+				Range range = new Range(initialImport, parseId(item
+						.get(LOWER_FIELD)), parseId(item.get(UPPER_FIELD)));
+				range.setLastId(parseId(item.get(LAST_ID_FIELD)));
+				range.setDone(XContentMapValues.nodeBooleanValue(
+						item.get(DONE_FIELD), false));
+				initialImport.ranges.add(range);
+			}
+		}
+		return initialImport;
+	}
+
+	private static Object parseId(Object value) {
+		if (value == null) {
+			return null;
+		}
+		return JSON.parse(value.toString());
+	}
+}
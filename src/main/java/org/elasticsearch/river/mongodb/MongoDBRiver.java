@@ -28,12 +28,24 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.net.SocketFactory;
 import javax.net.ssl.SSLContext;
@@ -41,20 +53,23 @@ import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 
-import org.bson.BasicBSONObject;
 import org.bson.types.BSONTimestamp;
 import org.bson.types.ObjectId;
 import org.elasticsearch.ElasticSearchInterruptedException;
 import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.cluster.block.ClusterBlockException;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
-import org.elasticsearch.common.StopWatch;
 import org.elasticsearch.common.collect.ImmutableMap;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.logging.ESLogger;
@@ -63,15 +78,20 @@ import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.common.util.concurrent.jsr166y.LinkedTransferQueue;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
-import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.engine.DocumentMissingException;
 import org.elasticsearch.indices.IndexAlreadyExistsException;
 import org.elasticsearch.river.AbstractRiverComponent;
 import org.elasticsearch.river.River;
 import org.elasticsearch.river.RiverIndexName;
 import org.elasticsearch.river.RiverName;
 import org.elasticsearch.river.RiverSettings;
+import org.elasticsearch.river.mongodb.util.BSONXContentSerializer;
+import org.elasticsearch.river.mongodb.util.LazyOplogDecoder;
 import org.elasticsearch.river.mongodb.util.MongoDBHelper;
+import org.elasticsearch.river.mongodb.util.MongoDBProjectionHelper;
 import org.elasticsearch.river.mongodb.util.MongoDBRiverHelper;
+import org.elasticsearch.script.CompiledScript;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.ScriptService;
 
@@ -108,9 +128,15 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 	public final static String TYPE = "mongodb";
 	public final static String NAME = "mongodb-river";
 	public final static String STATUS = "_mongodbstatus";
+	public final static String STATS = "_mongodbstats";
+	// oplog entries read backward to find the newest entry of the river
+	public final static int OPLOG_HEAD_MAX_SCAN = 100000;
 	public final static String ENABLED = "enabled";
 	public final static String DESCRIPTION = "MongoDB River Plugin";
 	public final static String LAST_TIMESTAMP_FIELD = "_last_ts";
+	public final static String INITIAL_IMPORT_FIELD = "_initial_import";
+	// '$' is not allowed in collection names
+	public final static String INITIAL_IMPORT_ID_SUFFIX = "$initial_import";
 	public final static String MONGODB_LOCAL_DATABASE = "local";
 	public final static String MONGODB_ADMIN_DATABASE = "admin";
 	public final static String MONGODB_CONFIG_DATABASE = "config";
@@ -120,6 +146,9 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 	public final static String MONGODB_NATURAL_OPERATOR = "$natural";
 	public final static String OPLOG_COLLECTION = "oplog.rs";
 	public final static String OPLOG_NAMESPACE = "ns";
+	public final static String OPLOG_FROM_MIGRATE = "fromMigrate";
+	public final static String OPLOG_HASH = "h";
+	public final static String OPLOG_VERSION = "v";
 	public final static String OPLOG_NAMESPACE_COMMAND = "$cmd";
 	public final static String OPLOG_OBJECT = "o";
 	public final static String OPLOG_UPDATE = "o2";
@@ -140,15 +169,26 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 	protected final MongoDBRiverDefinition definition;
 	protected final String mongoOplogNamespace;
 
-	protected final BasicDBObject findKeys = new BasicDBObject();
+	protected final DBObject findKeys;
 
 	protected volatile List<Thread> tailerThreads = new ArrayList<Thread>();
-	protected volatile Thread indexerThread;
+	protected volatile List<Thread> indexerThreads = new ArrayList<Thread>();
 	protected volatile Thread statusThread;
 	protected volatile boolean active = false;
 	protected volatile boolean startInvoked = false;
 
-	private final BlockingQueue<Map<String, Object>> stream;
+	private final List<BlockingQueue<QueueEntry>> streams = new ArrayList<BlockingQueue<QueueEntry>>();
+	private volatile CheckpointTracker<Object, QueueEntry> checkpoints;
+	private volatile ExecutorService checkpointExecutor;
+	private volatile CompiledScript compiledScript;
+	private volatile ScriptPool scriptPool;
+	private BSONTimestamp lastSavedTimestamp;
+	private final RiverStats stats;
+	// oplog of the slurper, read by the status thread for the lag
+	private volatile DBCollection slurpedOplog;
+	// trace of the oplog entry processed by the slurper thread
+	private final ThreadLocal<Trace> slurpedTrace = new ThreadLocal<Trace>();
+	private final List<StatsReporter> statsReporters = new CopyOnWriteArrayList<StatsReporter>();
 	private SocketFactory sslSocketFactory;
 
 	private Mongo mongo;
@@ -169,18 +209,29 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 		this.client = client;
 		
 		this.definition = MongoDBRiverDefinition.parseSettings(riverName, settings, scriptService);
-
-		if (definition.getExcludeFields() != null) {
-			for (String key : definition.getExcludeFields()) {
-				findKeys.put(key, 0);
-			}
+		this.stats = new RiverStats(
+				definition.getTraceSampleRate() > 0 ? new Tracer(
+						definition.getTraceSampleRate()) : null);
+
+		findKeys = MongoDBProjectionHelper.getCollectionProjection(definition);
+		statsReporters.add(new IndexStatsReporter(client, riverName.getName(),
+				riverIndexName, riverName.getName(), STATS));
+		if (definition.getStatsIndexName() != null) {
+			statsReporters.add(new IndexStatsReporter(client, riverName
+					.getName(), definition.getStatsIndexName(), definition
+					.getStatsTypeName(), null));
 		}
 		mongoOplogNamespace = definition.getMongoDb() + "." + definition.getMongoCollection();
 		
-		if (definition.getThrottleSize() == -1) {
-			stream = new LinkedTransferQueue<Map<String, Object>>();
-		} else {
-			stream = new ArrayBlockingQueue<Map<String, Object>>(definition.getThrottleSize());
+		// The throttle size is shared by the queues of the indexers
+		for (int i = 0; i < definition.getIndexerThreads(); i++) {
+			if (definition.getThrottleSize() == -1) {
+				streams.add(new LinkedTransferQueue<QueueEntry>());
+			} else {
+				streams.add(new ArrayBlockingQueue<QueueEntry>(Math.max(1,
+						definition.getThrottleSize()
+								/ definition.getIndexerThreads())));
+			}
 		}
 
 		statusThread = EsExecutors.daemonThreadFactory(
@@ -245,6 +296,20 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 			}
 		}
 
+		// The script is compiled once, each indexer has its own executable
+		compiledScript = null;
+		if (definition.getScript() != null
+				&& definition.getScriptType() != null) {
+			try {
+				compiledScript = scriptService.compile(
+						definition.getScriptType(), definition.getScript());
+			} catch (Exception e) {
+				logger.warn("failed to compile script [{}], disabling river...",
+						e, definition.getScript());
+				return;
+			}
+		}
+
 		if (isMongos()) {
 			DBCursor cursor = getConfigDb().getCollection("shards").find();
 			while (cursor.hasNext()) {
@@ -256,25 +321,42 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 					Thread tailerThread = EsExecutors.daemonThreadFactory(
 							settings.globalSettings(),
 							"mongodb_river_slurper-" + replicaName).newThread(
-							new Slurper(servers));
+							new Slurper(servers, replicaName));
 					tailerThreads.add(tailerThread);
 				}
 			}
 		} else {
 			Thread tailerThread = EsExecutors.daemonThreadFactory(
 					settings.globalSettings(), "mongodb_river_slurper")
-					.newThread(new Slurper(definition.getMongoServers()));
+					.newThread(new Slurper(definition.getMongoServers(), null));
 			tailerThreads.add(tailerThread);
 		}
 
+		// Entries left by a previous start are sent again by the slurpers
+		for (BlockingQueue<QueueEntry> stream : streams) {
+			stream.clear();
+		}
+		checkpoints = new CheckpointTracker<Object, QueueEntry>();
+
 		for (Thread thread : tailerThreads) {
 			thread.start();
 		}
 
-		indexerThread = EsExecutors.daemonThreadFactory(
-				settings.globalSettings(), "mongodb_river_indexer").newThread(
-				new Indexer());
-		indexerThread.start();
+		if (compiledScript != null && definition.getScriptThreads() > 1) {
+			scriptPool = new ScriptPool(definition.getScriptThreads(),
+					EsExecutors.daemonThreadFactory(settings.globalSettings(),
+							"mongodb_river_script"));
+		}
+		checkpointExecutor = Executors.newSingleThreadExecutor(EsExecutors
+				.daemonThreadFactory(settings.globalSettings(),
+						"mongodb_river_checkpoint"));
+		for (int i = 0; i < streams.size(); i++) {
+			Thread indexerThread = EsExecutors.daemonThreadFactory(
+					settings.globalSettings(), "mongodb_river_indexer-" + i)
+					.newThread(new Indexer(streams.get(i), checkpoints));
+			indexerThreads.add(indexerThread);
+			indexerThread.start();
+		}
 
 		startInvoked = true;
 	}
@@ -395,9 +477,17 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 				thread.interrupt();
 			}
 			tailerThreads.clear();
-			if (indexerThread != null) {
-				indexerThread.interrupt();
-				indexerThread = null;
+			for (Thread thread : indexerThreads) {
+				thread.interrupt();
+			}
+			indexerThreads.clear();
+			if (checkpointExecutor != null) {
+				checkpointExecutor.shutdown();
+				checkpointExecutor = null;
+			}
+			if (scriptPool != null) {
+				scriptPool.close();
+				scriptPool = null;
 			}
 			closeMongoClient();
 		} catch (Throwable t) {
@@ -453,60 +543,192 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 		private int deletedDocuments = 0;
 		private int insertedDocuments = 0;
 		private int updatedDocuments = 0;
-		private StopWatch sw;
-		private ExecutableScript scriptExecutable;
+		private long bulkStart;
+		private final ExecutableScript scriptExecutable;
+		private final BlockingQueue<QueueEntry> stream;
+		private final CheckpointTracker<Object, QueueEntry> checkpoints;
+		private final AdaptiveBulkSizer bulkSizer;
+		private final ScriptContext scriptContext = new ScriptContext();
+		private final PipelinedBulkExecutor bulkExecutor;
+		// Transformed documents which did not fit in the previous bulk
+		private final LinkedList<DocumentOperation> transformed = new LinkedList<DocumentOperation>();
+		// Documents to fetch after a partial update failed, when the stream
+		// was full
+		private final Queue<QueueEntry> missing = new ConcurrentLinkedQueue<QueueEntry>();
+		// Executable scripts are not thread safe: one per thread of the pool
+		private final ThreadLocal<ExecutableScript> poolScripts = new ThreadLocal<ExecutableScript>() {
+			@Override
+			protected ExecutableScript initialValue() {
+				return newExecutableScript();
+			}
+		};
+		private final ThreadLocal<ScriptContext> poolContexts = new ThreadLocal<ScriptContext>() {
+			@Override
+			protected ScriptContext initialValue() {
+				return new ScriptContext();
+			}
+		};
+
+		/*
+		 * Document to index once transformed by the script. No operation
+		 * when the entry is skipped.
+		 */
+		private class DocumentOperation {
+			private final QueueEntry entry;
+			private String operation;
+			private Map<String, Object> data;
+			private String objectId;
+			private String index;
+			private String type;
+			private String parent;
+			private String routing;
+
+			private DocumentOperation(QueueEntry entry) {
+				this.entry = entry;
+			}
+
+			private void set(String operation, Map<String, Object> data,
+					String objectId, String index, String type,
+					String parent, String routing) {
+				this.operation = operation;
+				this.data = data;
+				this.objectId = objectId;
+				this.index = index;
+				this.type = type;
+				this.parent = parent;
+				this.routing = routing;
+			}
+		}
+
+		private Indexer(final BlockingQueue<QueueEntry> stream,
+				final CheckpointTracker<Object, QueueEntry> checkpoints) {
+			this.stream = stream;
+			this.checkpoints = checkpoints;
+			this.bulkSizer = definition.isAdaptiveBulk() ? new AdaptiveBulkSizer(
+					definition, stream) : null;
+			this.bulkExecutor = new PipelinedBulkExecutor(client,
+					definition.getConcurrentBulkRequests(),
+					stats.getStage(RiverStats.BULK_STAGE),
+					new ActionListener<BulkResponse>() {
+						@Override
+						public void onResponse(BulkResponse response) {
+							stats.bulkExecuted(response);
+							if (bulkSizer != null) {
+								bulkSizer.onResponse(response);
+							}
+						}
+
+						@Override
+						public void onFailure(Throwable e) {
+							stats.bulkFailed();
+							if (bulkSizer != null) {
+								bulkSizer.onFailure(e);
+							}
+						}
+					});
+			this.scriptExecutable = newExecutableScript();
+		}
+
+		private ExecutableScript newExecutableScript() {
+			CompiledScript script = compiledScript;
+			if (script == null) {
+				return null;
+			}
+			return scriptService.executable(script,
+					ImmutableMap.<String, Object> of("logger", logger));
+		}
 
 		@Override
 		public void run() {
 			while (active) {
-				sw = new StopWatch().start();
+				bulkStart = System.nanoTime();
 				deletedDocuments = 0;
 				insertedDocuments = 0;
 				updatedDocuments = 0;
 
-				if (definition.getScript() != null && definition.getScriptType() != null) {
-					scriptExecutable = scriptService.executable(definition.getScriptType(),
-							definition.getScript(), ImmutableMap.of("logger", logger));
-				}
-
 				try {
-					BSONTimestamp lastTimestamp = null;
-					BulkRequestBuilder bulk = client.prepareBulk();
+					CoalescingBulkRequest requests = new CoalescingBulkRequest();
+					final List<QueueEntry> entries = new ArrayList<QueueEntry>();
 
 					// 1. Attempt to fill as much of the bulk request as
-					// possible
-					Map<String, Object> data = stream.take();
-					lastTimestamp = updateBulkRequest(bulk, data);
-					while ((data = stream.poll(definition.getBulkTimeout().millis(),
-							MILLISECONDS)) != null) {
-						lastTimestamp = updateBulkRequest(bulk, data);
-						if (bulk.numberOfActions() >= definition.getBulkSize()) {
-							break;
+					// possible. With a script pool the entries available
+					// are transformed together, the ones which do not fit
+					// in the bulk are kept for the next one.
+					long bulkTimeout = bulkSizer != null ? bulkSizer
+							.getBulkTimeout().millis() : definition
+							.getBulkTimeout().millis();
+					while (!isFull(requests)) {
+						if (transformed.isEmpty()) {
+							QueueEntry entry = missing.poll();
+							if (entry == null) {
+								entry = entries.isEmpty() ? stream.take()
+										: stream.poll(bulkTimeout, MILLISECONDS);
+							}
+							if (entry == null) {
+								break;
+							}
+							List<QueueEntry> chunk = new ArrayList<QueueEntry>();
+							chunk.add(entry);
+							if (scriptPool != null
+									|| (scriptExecutable != null && definition
+											.isBatchScript())) {
+								stream.drainTo(chunk, Math.max(0, getBulkSize()
+										- requests.numberOfActions() - 1));
+							}
+							transformed.addAll(transform(chunk));
 						}
+						DocumentOperation document = transformed.removeFirst();
+						entries.add(document.entry);
+						updateBulkRequest(requests, document);
 					}
-
-					// 2. Update the timestamp
-					if (lastTimestamp != null) {
-						updateLastTimestamp(mongoOplogNamespace, lastTimestamp,
-								bulk);
+					if (logger.isDebugEnabled()) {
+						logger.debug("{} operations coalesced in {} requests",
+								requests.numberOfActions(),
+								requests.numberOfRequests());
 					}
 
-					// 3. Execute the bulk requests
-					try {
-						BulkResponse response = bulk.execute().actionGet();
-						if (response.hasFailures()) {
-							// TODO write to exception queue?
-							logger.warn("failed to execute"
-									+ response.buildFailureMessage());
-						}
-					} catch (ElasticSearchInterruptedException esie) {
-						logger.warn(
-								"river-mongodb indexer bas been interrupted",
-								esie);
-						Thread.currentThread().interrupt();
-					} catch (Exception e) {
-						logger.warn("failed to execute bulk", e);
-					}
+					// 2. Execute the bulk requests. The timestamp and the
+					// initial import progress are saved once the entries
+					// of all the indexers before them have been
+					// acknowledged. They are not saved anymore past the
+					// entries of a failed bulk so they are indexed again
+					// after a restart.
+					bulkExecutor.execute(requests.addTo(new BulkRequest()),
+							requests.keys(), new ActionListener<BulkResponse>() {
+								@Override
+								public void onResponse(BulkResponse response) {
+									Set<String> missingIds = getMissingDocuments(response);
+									for (QueueEntry entry : entries) {
+										if (entry.isPartialUpdate()
+												&& missingIds.remove(entry
+														.getData()
+														.get(MONGODB_ID_FIELD)
+														.toString())) {
+											refetch(entry);
+										}
+										checkpoints.acknowledge(getLane(entry),
+												entry.getSequence());
+										if (entry.getTrace() != null) {
+											entry.getTrace().mark(
+													Tracer.BULK_STAGE);
+											stats.getTracer().record(
+													entry.getTrace());
+										}
+									}
+									saveCheckpoints(checkpoints);
+								}
+
+								@Override
+								public void onFailure(Throwable e) {
+									for (QueueEntry entry : entries) {
+										checkpoints.fail(getLane(entry),
+												entry.getSequence());
+									}
+									logger.warn(
+											"bulk of {} entries failed, the checkpoint is not saved past them until the river is restarted",
+											entries.size());
+								}
+							});
 
 				} catch (InterruptedException e) {
 					if (logger.isDebugEnabled()) {
@@ -519,27 +741,166 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 			}
 		}
 
-		@SuppressWarnings({ "unchecked" })
-		private BSONTimestamp updateBulkRequest(final BulkRequestBuilder bulk,
-				Map<String, Object> data) {
+		/*
+		 * Partial updates of documents which are not in the index (skipped
+		 * by a filter, deleted from the index...).
+		 */
+		private Set<String> getMissingDocuments(final BulkResponse response) {
+			Set<String> ids = new HashSet<String>();
+			for (BulkItemResponse item : response.getItems()) {
+				if (item.isFailed()
+						&& item.getFailureMessage() != null
+						&& item.getFailureMessage().contains(
+								DocumentMissingException.class.getSimpleName())) {
+					ids.add(item.getId());
+				}
+			}
+			return ids;
+		}
+
+		/*
+		 * The document is fetched and indexed again. The refetch is added to
+		 * the checkpoints before the update is acknowledged so the update is
+		 * not skipped after a restart.
+		 */
+		private void refetch(final QueueEntry entry) {
+			QueueEntry refetch = entry.toRefetch();
+			refetch.setSequence(checkpoints.add(getLane(refetch), refetch));
+			logger.debug("Document {} missing from the index, fetch it",
+					refetch.getData().get(MONGODB_ID_FIELD));
+			if (!stream.offer(refetch)) {
+				missing.add(refetch);
+			}
+		}
+
+		/*
+		 * Document of a failed partial update, null if it has been deleted
+		 * since.
+		 */
+		@SuppressWarnings("unchecked")
+		private Map<String, Object> fetch(final QueueEntry entry) {
+			Object id = entry.getData().get(MONGODB_ID_FIELD);
+			try {
+				DBObject item = entry.getCollection().findOne(
+						new BasicDBObject(MONGODB_ID_FIELD, id), findKeys);
+				return item == null ? null : MongoDBHelper.asMap(item);
+			} catch (MongoException e) {
+				logger.warn("failed to fetch document {}", e, id);
+				return null;
+			}
+		}
+
+		private int getBulkSize() {
+			return bulkSizer != null ? bulkSizer.getBulkSize() : definition
+					.getBulkSize();
+		}
+
+		/*
+		 * Transforms the documents in parallel when there is a script pool.
+		 * The results are in the order of the entries.
+		 */
+		private List<DocumentOperation> transform(final List<QueueEntry> chunk)
+				throws InterruptedException {
+			ScriptPool pool = scriptPool;
+			if (pool != null && chunk.size() > 1) {
+				// a task per document, or per thread in batch mode
+				int partitions = definition.isBatchScript() ? Math.min(
+						chunk.size(), definition.getScriptThreads()) : chunk
+						.size();
+				List<List<QueueEntry>> parts = new ArrayList<List<QueueEntry>>(
+						partitions);
+				List<Callable<List<DocumentOperation>>> tasks = new ArrayList<Callable<List<DocumentOperation>>>(
+						partitions);
+				for (int i = 0; i < partitions; i++) {
+					final List<QueueEntry> part = chunk.subList(i
+							* chunk.size() / partitions, (i + 1) * chunk.size()
+							/ partitions);
+					parts.add(part);
+					tasks.add(new Callable<List<DocumentOperation>>() {
+						@Override
+						public List<DocumentOperation> call() {
+							return transform(part, poolScripts.get(),
+									poolContexts.get());
+						}
+					});
+				}
+				List<DocumentOperation> documents = new ArrayList<DocumentOperation>(
+						chunk.size());
+				List<Future<List<DocumentOperation>>> futures = pool
+						.invokeAll(tasks);
+				for (int i = 0; i < futures.size(); i++) {
+					try {
+						documents.addAll(futures.get(i).get());
+					} catch (ExecutionException e) {
+						logger.warn(
+								"failed to script process {} documents, ignoring",
+								e.getCause(), parts.get(i).size());
+						for (QueueEntry entry : parts.get(i)) {
+							documents.add(new DocumentOperation(entry));
+						}
+					}
+				}
+				return documents;
+			}
+			return transform(chunk, scriptExecutable, scriptContext);
+		}
+
+		private List<DocumentOperation> transform(
+				final List<QueueEntry> entries,
+				final ExecutableScript scriptExecutable,
+				final ScriptContext scriptContext) {
+			if (definition.isBatchScript() && scriptExecutable != null) {
+				return transformBatch(entries, scriptExecutable);
+			}
+			List<DocumentOperation> documents = new ArrayList<DocumentOperation>(
+					entries.size());
+			for (QueueEntry entry : entries) {
+				documents.add(transform(entry, scriptExecutable, scriptContext));
+			}
+			return documents;
+		}
+
+		/*
+		 * The bulk is sent when it reaches either the number of operations or
+		 * the size in bytes.
+		 */
+		private boolean isFull(final CoalescingBulkRequest requests) {
+			if (requests.numberOfActions() >= getBulkSize()) {
+				return true;
+			}
+			long bulkSizeBytes = definition.getBulkSizeBytes().bytes();
+			return bulkSizeBytes > 0
+					&& requests.estimatedSizeInBytes() >= bulkSizeBytes;
+		}
+
+		/*
+		 * Document to index before the script: river index and type, no
+		 * operation if the entry is skipped.
+		 */
+		private DocumentOperation prepare(final QueueEntry entry) {
+			if (entry.getTrace() != null) {
+				entry.getTrace().mark(Tracer.QUEUE_STAGE);
+			}
+			DocumentOperation result = new DocumentOperation(entry);
+			Map<String, Object> data = entry.isRefetch() ? fetch(entry) : entry
+					.getData();
+			if (data == null) {
+				// end of an initial import range or document deleted
+				return result;
+			}
 			if (data.get(MONGODB_ID_FIELD) == null
-					&& !data.get(OPLOG_OPERATION).equals(
-							OPLOG_COMMAND_OPERATION)) {
+					&& !entry.getOperation().equals(OPLOG_COMMAND_OPERATION)) {
 				logger.warn(
 						"Cannot get object id. Skip the current item: [{}]",
 						data);
-				return null;
+				return result;
 			}
-			BSONTimestamp lastTimestamp = (BSONTimestamp) data
-					.get(OPLOG_TIMESTAMP);
-			String operation = data.get(OPLOG_OPERATION).toString();
+			String operation = entry.getOperation();
 			// String objectId = data.get(MONGODB_ID_FIELD).toString();
 			String objectId = "";
 			if (data.get(MONGODB_ID_FIELD) != null) {
 				objectId = data.get(MONGODB_ID_FIELD).toString();
 			}
-			data.remove(OPLOG_TIMESTAMP);
-			data.remove(OPLOG_OPERATION);
 			if (logger.isDebugEnabled()) {
 				logger.debug("updateBulkRequest for id: [{}], operation: [{}]",
 						objectId, operation);
@@ -552,66 +913,164 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 				data.put(definition.getIncludeCollection(), definition.getMongoCollection());
 			}
 
-			Map<String, Object> ctx = null;
+			result.set(operation, data, objectId, definition.getIndexName(),
+					definition.getTypeName(), null, null);
+			return result;
+		}
+
+		/*
+		 * Runs the script on a document. The script and its context are
+		 * given by the caller so documents can be transformed by several
+		 * threads.
+		 */
+		@SuppressWarnings({ "unchecked" })
+		private DocumentOperation transform(final QueueEntry entry,
+				final ExecutableScript scriptExecutable,
+				final ScriptContext scriptContext) {
+			DocumentOperation document = prepare(entry);
+			// No context is needed without script
+			if (document.operation == null || scriptExecutable == null) {
+				return document;
+			}
+			Map<String, Object> ctx = scriptContext.reset(document.data,
+					document.operation, document.objectId);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Script to be executed: {}", scriptExecutable);
+				logger.debug("Context before script executed: {}", ctx);
+			}
+			scriptExecutable.setNextVar("ctx", ctx);
+			long start = System.nanoTime();
 			try {
-				ctx = XContentFactory.xContent(XContentType.JSON)
-						.createParser("{}").mapAndClose();
-			} catch (IOException e) {
-				logger.warn("failed to parse {}", e);
-			}
-			if (scriptExecutable != null) {
-				if (ctx != null) {
-					ctx.put("document", data);
-					ctx.put("operation", operation);
-					if (!objectId.isEmpty()) {
-						ctx.put("id", objectId);
-					}
-					if (logger.isDebugEnabled()) {
-						logger.debug("Script to be executed: {}",
-								scriptExecutable);
-						logger.debug("Context before script executed: {}", ctx);
-					}
-					scriptExecutable.setNextVar("ctx", ctx);
-					try {
-						scriptExecutable.run();
-						// we need to unwrap the context object...
-						ctx = (Map<String, Object>) scriptExecutable
-								.unwrap(ctx);
-					} catch (Exception e) {
-						logger.warn("failed to script process {}, ignoring", e,
-								ctx);
-					}
-					if (logger.isDebugEnabled()) {
-						logger.debug("Context after script executed: {}", ctx);
-					}
-					if (ctx.containsKey("ignore")
-							&& ctx.get("ignore").equals(Boolean.TRUE)) {
-						logger.debug("From script ignore document id: {}",
-								objectId);
-						// ignore document
-						return lastTimestamp;
-					}
-					if (ctx.containsKey("deleted")
-							&& ctx.get("deleted").equals(Boolean.TRUE)) {
-						ctx.put("operation", OPLOG_DELETE_OPERATION);
-					}
-					if (ctx.containsKey("document")) {
-						data = (Map<String, Object>) ctx.get("document");
-						logger.debug("From script document: {}", data);
-					}
-					if (ctx.containsKey("operation")) {
-						operation = ctx.get("operation").toString();
-						logger.debug("From script operation: {}", operation);
-					}
+				scriptExecutable.run();
+				// we need to unwrap the context object...
+				ctx = (Map<String, Object>) scriptExecutable.unwrap(ctx);
+			} catch (Exception e) {
+				logger.warn("failed to script process {}, ignoring", e, ctx);
+			}
+			stats.getStage(RiverStats.SCRIPT_STAGE).record(
+					System.nanoTime() - start, 1);
+			if (entry.getTrace() != null) {
+				entry.getTrace().mark(Tracer.SCRIPT_STAGE);
+			}
+			applyContext(document, ctx);
+			return document;
+		}
+
+		/*
+		 * Batch script mode: the script runs once for the documents with the
+		 * list of their contexts in "ctxs". It updates the contexts or
+		 * returns a list with a context for each document, in the same order.
+		 */
+		private List<DocumentOperation> transformBatch(
+				final List<QueueEntry> entries,
+				final ExecutableScript scriptExecutable) {
+			List<DocumentOperation> documents = new ArrayList<DocumentOperation>(
+					entries.size());
+			List<DocumentOperation> scripted = new ArrayList<DocumentOperation>(
+					entries.size());
+			List<Map<String, Object>> ctxs = new ArrayList<Map<String, Object>>(
+					entries.size());
+			for (QueueEntry entry : entries) {
+				DocumentOperation document = prepare(entry);
+				documents.add(document);
+				if (document.operation != null) {
+					scripted.add(document);
+					ctxs.add(new ScriptContext().reset(document.data,
+							document.operation, document.objectId));
+				}
+			}
+			if (scripted.isEmpty()) {
+				return documents;
+			}
+			scriptExecutable.setNextVar("ctxs", ctxs);
+			long start = System.nanoTime();
+			try {
+				Object result = scriptExecutable.unwrap(scriptExecutable.run());
+				if (!(result instanceof List)) {
+					result = scriptExecutable.unwrap(ctxs);
+				}
+				// a malformed result is ignored like a failed script
+				List<Map<String, Object>> contexts = ScriptContext
+						.batchContexts(result, ctxs.size());
+				if (contexts != null) {
+					ctxs = contexts;
+				} else {
+					logger.warn(
+							"batch script did not return a context for each of the {} documents, ignoring",
+							ctxs.size());
 				}
+			} catch (Exception e) {
+				logger.warn("failed to script process {} documents, ignoring",
+						e, ctxs.size());
+			}
+			stats.getStage(RiverStats.SCRIPT_STAGE).record(
+					System.nanoTime() - start, ctxs.size());
+			for (int i = 0; i < scripted.size(); i++) {
+				if (scripted.get(i).entry.getTrace() != null) {
+					scripted.get(i).entry.getTrace().mark(Tracer.SCRIPT_STAGE);
+				}
+				applyContext(scripted.get(i), ctxs.get(i));
+			}
+			return documents;
+		}
+
+		/*
+		 * Reads the values set by the script.
+		 */
+		@SuppressWarnings({ "unchecked" })
+		private void applyContext(final DocumentOperation document,
+				final Map<String, Object> ctx) {
+			String objectId = document.objectId;
+			String operation = document.operation;
+			Map<String, Object> data = document.data;
+			if (logger.isDebugEnabled()) {
+				logger.debug("Context after script executed: {}", ctx);
+			}
+			if (ctx.containsKey("ignore")
+					&& ctx.get("ignore").equals(Boolean.TRUE)) {
+				logger.debug("From script ignore document id: {}", objectId);
+				// ignore document
+				document.set(null, null, null, null, null, null, null);
+				return;
+			}
+			if (ctx.containsKey("deleted")
+					&& ctx.get("deleted").equals(Boolean.TRUE)) {
+				ctx.put("operation", OPLOG_DELETE_OPERATION);
+			}
+			if (ctx.containsKey("document")) {
+				data = (Map<String, Object>) ctx.get("document");
+				logger.debug("From script document: {}", data);
+			}
+			if (ctx.containsKey("operation")) {
+				operation = ctx.get("operation").toString();
+				logger.debug("From script operation: {}", operation);
+			}
+			document.set(operation, data, extractObjectId(ctx, objectId),
+					extractIndex(ctx), extractType(ctx), extractParent(ctx),
+					extractRouting(ctx));
+		}
+
+		private void updateBulkRequest(final CoalescingBulkRequest bulk,
+				final DocumentOperation document) throws InterruptedException {
+			if (document.operation == null) {
+				return;
+			}
+			QueueEntry entry = document.entry;
+			String operation = document.operation;
+			Map<String, Object> data = document.data;
+			String objectId = document.objectId;
+			String index = document.index;
+			String type = document.type;
+			String parent = document.parent;
+			String routing = document.routing;
+			// time waiting for the bulk so far, serialize until the request
+			// is added
+			Trace trace = entry.getTrace();
+			if (trace != null) {
+				trace.mark(Tracer.BULK_STAGE);
 			}
 
 			try {
-				String index = extractIndex(ctx);
-				String type = extractType(ctx);
-				String parent = extractParent(ctx);
-				String routing = extractRouting(ctx);
-				objectId = extractObjectId(ctx, objectId);
 				if (logger.isDebugEnabled()) {
 					logger.debug(
 							"Operation: {} - index: {} - type: {} - routing: {} - parent: {}",
@@ -624,10 +1083,12 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 								operation, objectId,
 								data.containsKey(IS_MONGODB_ATTACHMENT));
 					}
-					bulk.add(indexRequest(index).type(type).id(objectId)
-							.source(build(data, objectId)).routing(routing)
-							.parent(parent));
+					bulk.add(index, type, objectId, routing, parent,
+							indexRequest(index).type(type).id(objectId)
+									.source(build(data, objectId))
+									.routing(routing).parent(parent));
 					insertedDocuments++;
+					stats.documentIndexed(operation);
 				}
 				if (OPLOG_UPDATE_OPERATION.equals(operation)) {
 					if (logger.isDebugEnabled()) {
@@ -636,20 +1097,36 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 								objectId,
 								data.containsKey(IS_MONGODB_ATTACHMENT));
 					}
-					bulk.add(new DeleteRequest(index, type, objectId).routing(
-							routing).parent(parent));
-					bulk.add(indexRequest(index).type(type).id(objectId)
-							.source(build(data, objectId)).routing(routing)
-							.parent(parent));
+					if (entry.isPartialUpdate() && scriptExecutable == null) {
+						bulk.add(index, type, objectId, routing, parent,
+								partialUpdateRequest(index, type, objectId,
+										entry.getUnsetFields(), data)
+										.routing(routing).parent(parent));
+						updatedDocuments++;
+						stats.documentIndexed(operation);
+						return;
+					}
+					/*
+					 * Index request overwrites the document. A delete request
+					 * is not needed: it would be routed with the new routing /
+					 * parent so could not remove a copy stored with the
+					 * previous ones anyway.
+					 */
+					bulk.add(index, type, objectId, routing, parent,
+							indexRequest(index).type(type).id(objectId)
+									.source(build(data, objectId))
+									.routing(routing).parent(parent));
 					updatedDocuments++;
-					// new UpdateRequest(definition.getIndexName(), definition.getTypeName(), objectId)
+					stats.documentIndexed(operation);
 				}
 				if (OPLOG_DELETE_OPERATION.equals(operation)) {
 					logger.info("Delete request [{}], [{}], [{}]", index, type,
 							objectId);
-					bulk.add(new DeleteRequest(index, type, objectId).routing(
-							routing).parent(parent));
+					bulk.add(index, type, objectId, routing, parent,
+							new DeleteRequest(index, type, objectId).routing(
+									routing).parent(parent));
 					deletedDocuments++;
+					stats.documentIndexed(operation);
 				}
 				if (OPLOG_COMMAND_OPERATION.equals(operation)) {
 					if (definition.isDropCollection()) {
@@ -658,7 +1135,8 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 										.equals(definition.getMongoCollection())) {
 							logger.info("Drop collection request [{}], [{}]",
 									index, type);
-							bulk.request().requests().clear();
+							bulk.clear();
+							bulkExecutor.waitForAll();
 							client.admin().indices().prepareRefresh(index)
 									.execute().actionGet();
 							Map<String, MappingMetaData> mappings = client
@@ -708,19 +1186,56 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 				}
 			} catch (IOException e) {
 				logger.warn("failed to parse {}", e, data);
+			} finally {
+				if (trace != null) {
+					trace.mark(Tracer.SERIALIZE_STAGE);
+				}
+			}
+		}
+
+		/*
+		 * Merge the fields of a $set or remove the fields of an $unset.
+		 */
+		private UpdateRequest partialUpdateRequest(final String index,
+				final String type, final String objectId,
+				final List<String> unsetFields, final Map<String, Object> data)
+				throws IOException {
+			UpdateRequest request = new UpdateRequest(index, type, objectId);
+			if (unsetFields.isEmpty()) {
+				return request.doc(build(data, objectId));
 			}
-			return lastTimestamp;
+			StringBuilder script = new StringBuilder();
+			Map<String, Object> params = new HashMap<String, Object>();
+			for (int i = 0; i < unsetFields.size(); i++) {
+				script.append("ctx._source.remove(field").append(i)
+						.append(");");
+				params.put("field" + i, unsetFields.get(i));
+			}
+			return request.script(script.toString()).scriptParams(params);
 		}
 
 		private XContentBuilder build(final Map<String, Object> data,
 				final String objectId) throws IOException {
+			long start = System.nanoTime();
+			try {
+				return serialize(data, objectId);
+			} finally {
+				stats.getStage(RiverStats.SERIALIZE_STAGE).record(
+						System.nanoTime() - start, 1);
+			}
+		}
+
+		private XContentBuilder serialize(final Map<String, Object> data,
+				final String objectId) throws IOException {
 			if (data.containsKey(IS_MONGODB_ATTACHMENT)) {
 				logger.info("Add Attachment: {} to index {} / type {}",
 						objectId, definition.getIndexName(), definition.getTypeName());
 				return MongoDBHelper.serialize((GridFSDBFile) data
-						.get(MONGODB_ATTACHMENT));
+						.get(MONGODB_ATTACHMENT), XContentFactory
+						.contentBuilder(definition.getSourceFormat()));
 			} else {
-				return XContentFactory.jsonBuilder().map(data);
+				return BSONXContentSerializer.serialize(data, XContentFactory
+						.contentBuilder(definition.getSourceFormat()));
 			}
 		}
 
@@ -769,10 +1284,10 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 		}
 
 		private void logStatistics() {
-			long totalDocuments = deletedDocuments + insertedDocuments;
-			long totalTimeInSeconds = sw.stop().totalTime().seconds();
-			long totalDocumentsPerSecond = (totalTimeInSeconds == 0) ? totalDocuments
-					: totalDocuments / totalTimeInSeconds;
+			long totalDocuments = deletedDocuments + insertedDocuments
+					+ updatedDocuments;
+			long totalTimeInNanos = Math.max(1, System.nanoTime() - bulkStart);
+			long totalDocumentsPerSecond = (long) (totalDocuments * 1e9 / totalTimeInNanos);
 			logger.info(
 					"Indexed {} documents, {} insertions, {} updates, {} deletions, {} documents per second",
 					totalDocuments, insertedDocuments, updatedDocuments,
@@ -787,10 +1302,19 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 		private DBCollection slurpedCollection;
 		private DB oplogDb;
 		private DBCollection oplogCollection;
+		private BSONTimestamp initialImportTimestamp;
+		// _id of updated documents to fetch, in oplog order
+		private final Map<Object, BSONTimestamp> refetchBatch = new LinkedHashMap<Object, BSONTimestamp>();
+		private long refetchBatchStart;
 		private final List<ServerAddress> mongoServers;
+		// replica set name of the shard, null if not sharded
+		private final String shard;
+		// kept across retries: the queued entries refer to its ranges
+		private InitialImport initialImport;
 
-		public Slurper(List<ServerAddress> mongoServers) {
+		public Slurper(List<ServerAddress> mongoServers, String shard) {
 			this.mongoServers = mongoServers;
+			this.shard = shard;
 		}
 
 		private boolean assignCollections() {
@@ -833,6 +1357,7 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 				return false;
 			}
 			oplogCollection = oplogDb.getCollection(OPLOG_COLLECTION);
+			slurpedOplog = oplogCollection;
 
 			slurpedDb = mongo.getDB(definition.getMongoDb());
 			if (!definition.getMongoAdminUser().isEmpty() && !definition.getMongoAdminPassword().isEmpty()
@@ -882,15 +1407,42 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 								// slurpedCollection
 					}
 
-					DBCursor oplogCursor = oplogCursor(null);
+					DBCursor oplogCursor = null;
+					if (initialImportTimestamp == null) {
+						oplogCursor = resumeInitialImport();
+					}
+					if (oplogCursor == null) {
+						oplogCursor = oplogCursor(null);
+					}
 					if (oplogCursor == null) {
 						oplogCursor = processFullCollection();
 					}
 
-					while (oplogCursor.hasNext()) {
-						DBObject item = oplogCursor.next();
-						processOplogEntry(item);
+					DBObject item;
+					StageStats slurpStage = stats
+							.getStage(RiverStats.SLURP_STAGE);
+					Tracer tracer = stats.getTracer();
+					long next = System.nanoTime();
+					while ((item = nextOplogEntry(oplogCursor)) != null) {
+						long start = System.nanoTime();
+						if (tracer != null) {
+							Trace trace = tracer.sample(
+									(BSONTimestamp) item.get(OPLOG_TIMESTAMP),
+									next);
+							if (trace != null) {
+								trace.mark(Tracer.CURSOR_STAGE);
+								slurpedTrace.set(trace);
+							}
+						}
+						try {
+							processOplogEntry(item);
+						} finally {
+							slurpedTrace.remove();
+						}
+						next = System.nanoTime();
+						slurpStage.record(next - start, 1);
 					}
+					flushRefetchBatch();
 					logger.trace("*** Try again in few seconds...");
 					Thread.sleep(500);
 				} catch (MongoInterruptedException mIEx) {
@@ -911,6 +1463,29 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 			}
 		}
 
+		/*
+		 * Do not block on the tailable cursor while updated documents are
+		 * waiting to be fetched: the batch is sent as soon as no more entry is
+		 * immediately available or the batch timeout expired.
+		 */
+		private DBObject nextOplogEntry(final DBCursor oplogCursor)
+				throws InterruptedException {
+			if (!refetchBatch.isEmpty()) {
+				if (System.currentTimeMillis() - refetchBatchStart < definition
+						.getRefetchBatchTimeout().millis()) {
+					DBObject item = oplogCursor.tryNext();
+					if (item != null) {
+						return item;
+					}
+				}
+				flushRefetchBatch();
+			}
+			if (oplogCursor.hasNext()) {
+				return oplogCursor.next();
+			}
+			return null;
+		}
+
 		/*
 		 * Remove fscynlock and unlock -
 		 * https://github.com/richardwilly98/elasticsearch
@@ -923,7 +1498,16 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 				BSONTimestamp currentTimestamp = (BSONTimestamp) oplogCollection
 						.find().sort(new BasicDBObject(OPLOG_TIMESTAMP, -1))
 						.limit(1).next().get(OPLOG_TIMESTAMP);
-				addQueryToStream(OPLOG_INSERT_OPERATION, currentTimestamp, null);
+				List<Object> splitPoints = new ArrayList<Object>();
+				if (definition.getInitialImportParallelism() > 1) {
+					splitPoints = getImportSplitPoints(definition
+							.getInitialImportParallelism());
+				}
+				initialImport = new InitialImport(shard, currentTimestamp,
+						splitPoints);
+				saveInitialImport(mongoOplogNamespace, initialImport);
+				importCollection(initialImport);
+				initialImportTimestamp = currentTimestamp;
 				return oplogCursor(currentTimestamp);
 			} finally {
 				// mongo.unlock();
@@ -934,6 +1518,172 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 			// }
 		}
 
+		/*
+		 * Continue an initial import interrupted by a restart or by an error
+		 * of the slurper. The oplog is then tailed from the timestamp
+		 * captured before the import started.
+		 */
+		private DBCursor resumeInitialImport() throws InterruptedException {
+			if (initialImport == null) {
+				initialImport = getInitialImport(mongoOplogNamespace, shard);
+			}
+			if (initialImport == null || initialImport.isDone()) {
+				return null;
+			}
+			logger.info("Resume initial import of {} - pending ranges: {}",
+					mongoOplogNamespace, initialImport.getPendingRanges());
+			importCollection(initialImport);
+			initialImportTimestamp = initialImport.getTimestamp();
+			return oplogCursor(initialImportTimestamp);
+		}
+
+		/*
+		 * Scan each pending range of _id in its own thread.
+		 */
+		private void importCollection(final InitialImport initialImport)
+				throws InterruptedException {
+			List<InitialImport.Range> ranges = initialImport.getPendingRanges();
+			if (ranges.size() == 1) {
+				importRange(ranges.get(0), initialImport.getTimestamp());
+				return;
+			}
+
+			logger.info("Initial import of {} using {} ranges",
+					mongoOplogNamespace, ranges.size());
+			ExecutorService executor = Executors.newFixedThreadPool(
+					ranges.size(), EsExecutors.daemonThreadFactory(
+							settings.globalSettings(), "mongodb_river_import"));
+			try {
+				List<Future<Long>> futures = new ArrayList<Future<Long>>();
+				for (final InitialImport.Range range : ranges) {
+					futures.add(executor.submit(new Callable<Long>() {
+						@Override
+						public Long call() throws Exception {
+							return importRange(range,
+									initialImport.getTimestamp());
+						}
+					}));
+				}
+				long count = 0;
+				for (Future<Long> future : futures) {
+					count += future.get();
+				}
+				logger.info("Initial import of {} queued {} documents",
+						mongoOplogNamespace, count);
+			} catch (ExecutionException eEx) {
+				Throwable cause = eEx.getCause();
+				if (cause instanceof InterruptedException) {
+					throw (InterruptedException) cause;
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new MongoException("Initial import failed", cause);
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+
+		/*
+		 * (partitions - 1) evenly spaced _id values. The splitVector command
+		 * reads the _id index once; without it (mongos, missing privilege)
+		 * the values are sampled with skip, which scans the index for each
+		 * split point.
+		 */
+		@SuppressWarnings("unchecked")
+		private List<Object> getImportSplitPoints(final int partitions) {
+			long count = slurpedCollection.count();
+			if (count < partitions) {
+				return new ArrayList<Object>();
+			}
+			DBObject keys = new BasicDBObject(MONGODB_ID_FIELD, 1);
+			long size = slurpedCollection.getStats().getLong("size", 0);
+			CommandResult result = slurpedDb.command(new BasicDBObject(
+					"splitVector", slurpedCollection.getFullName())
+					.append("keyPattern", keys).append("maxChunkSizeBytes",
+							Math.max(1, size / partitions)));
+			if (result.ok()) {
+				List<Object> candidates = new ArrayList<Object>();
+				for (Object splitKey : (List<Object>) result.get("splitKeys")) {
+					candidates.add(((DBObject) splitKey).get(MONGODB_ID_FIELD));
+				}
+				List<Object> splitPoints = InitialImport.selectSplitPoints(
+						candidates, partitions);
+				if (logger.isDebugEnabled()) {
+					logger.debug("Initial import split points: {}",
+							splitPoints);
+				}
+				return splitPoints;
+			}
+			logger.info(
+					"splitVector failed ({}), sampling the initial import split points",
+					result.getErrorMessage());
+			List<Object> splitPoints = new ArrayList<Object>();
+			if (count > Integer.MAX_VALUE) {
+				logger.warn(
+						"{} documents in collection {}, too many to sample split points: parallel initial import disabled",
+						count, definition.getMongoCollection());
+				return splitPoints;
+			}
+			Object previous = null;
+			for (int i = 1; i < partitions; i++) {
+				DBCursor cursor = slurpedCollection
+						.find(new BasicDBObject(), keys).sort(keys)
+						.skip((int) (count * i / partitions)).limit(1);
+				try {
+					if (cursor.hasNext()) {
+						Object id = cursor.next().get(MONGODB_ID_FIELD);
+						if (id != null && !id.equals(previous)) {
+							splitPoints.add(id);
+							previous = id;
+						}
+					}
+				} finally {
+					cursor.close();
+				}
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("Initial import split points: {}", splitPoints);
+			}
+			return splitPoints;
+		}
+
+		/*
+		 * $min / $max work on the index bounds so ranges are not restricted to
+		 * a single BSON type (unlike $gte / $lt). The range is closed by an
+		 * entry without data once all its documents have been queued.
+		 */
+		@SuppressWarnings("unchecked")
+		private long importRange(final InitialImport.Range range,
+				final BSONTimestamp currentTimestamp)
+				throws InterruptedException {
+			DBObject byId = new BasicDBObject(MONGODB_ID_FIELD, 1);
+			DBCursor cursor = slurpedCollection
+					.find(new BasicDBObject(), findKeys).sort(byId).hint(byId);
+			if (range.getResumeFrom() != null) {
+				cursor.addSpecial("$min", new BasicDBObject(MONGODB_ID_FIELD,
+						range.getResumeFrom()));
+			}
+			if (range.getUpper() != null) {
+				cursor.addSpecial("$max", new BasicDBObject(MONGODB_ID_FIELD,
+						range.getUpper()));
+			}
+			long count = 0;
+			try {
+				while (cursor.hasNext()) {
+					DBObject item = cursor.next();
+					enqueue(new QueueEntry(currentTimestamp,
+							OPLOG_INSERT_OPERATION, MongoDBHelper.asMap(item), range));
+					count++;
+				}
+			} finally {
+				cursor.close();
+			}
+			enqueue(new QueueEntry(currentTimestamp,
+					OPLOG_INSERT_OPERATION, null, range));
+			logger.debug("Imported {} documents in range {}", count, range);
+			return count;
+		}
+
 		@SuppressWarnings("unchecked")
 		private void processOplogEntry(final DBObject entry)
 				throws InterruptedException {
@@ -941,18 +1691,12 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 			String namespace = entry.get(OPLOG_NAMESPACE).toString();
 			BSONTimestamp oplogTimestamp = (BSONTimestamp) entry
 					.get(OPLOG_TIMESTAMP);
-			DBObject object = (DBObject) entry.get(OPLOG_OBJECT);
-
-			if (logger.isTraceEnabled()) {
-				logger.trace("MongoDB object deserialized: {}",
-						object.toString());
-			}
+			stats.setLastOplogTimestamp(oplogTimestamp);
 
 			// Initial support for sharded collection -
 			// https://jira.mongodb.org/browse/SERVER-4333
 			// Not interested in operation from migration or sharding
-			if (entry.containsField("fromMigrate")
-					&& ((BasicBSONObject) entry).getBoolean("fromMigrate")) {
+			if (Boolean.TRUE.equals(entry.get(OPLOG_FROM_MIGRATE))) {
 				logger.debug(
 						"From migration or sharding operation. Can be ignored. {}",
 						entry);
@@ -963,6 +1707,12 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 				return;
 			}
 
+			// With lazy decoding "o" and "o2" are only decoded from here
+			DBObject object = MongoDBHelper.decode(entry.get(OPLOG_OBJECT));
+			if (logger.isTraceEnabled()) {
+				logger.trace("MongoDB object deserialized: {}", object);
+			}
+
 			if (logger.isTraceEnabled()) {
 				logger.trace("oplog entry - namespace [{}], operation [{}]",
 						namespace, operation);
@@ -993,8 +1743,7 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 					throw new NullPointerException(MONGODB_ID_FIELD);
 				}
 				logger.info("Add attachment: {}", objectId);
-				object = MongoDBHelper
-						.applyExcludeFields(object, definition.getExcludeFields());
+				object = definition.getExcludeFilter().apply(object);
 				HashMap<String, Object> data = new HashMap<String, Object>();
 				data.put(IS_MONGODB_ATTACHMENT, true);
 				data.put(MONGODB_ATTACHMENT, object);
@@ -1002,13 +1751,23 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 				addToStream(operation, oplogTimestamp, data);
 			} else {
 				if (OPLOG_UPDATE_OPERATION.equals(operation)) {
-					DBObject update = (DBObject) entry.get(OPLOG_UPDATE);
+					DBObject update = MongoDBHelper.decode(entry
+							.get(OPLOG_UPDATE));
 					logger.debug("Updated item: {}", update);
-					addQueryToStream(operation, oplogTimestamp, update);
+					if (!addUpdateToStream(oplogTimestamp, update, object)) {
+						addRefetchToStream(oplogTimestamp, update);
+					}
 				} else {
-					object = MongoDBHelper.applyExcludeFields(object,
-							definition.getExcludeFields());
-					addToStream(operation, oplogTimestamp, object.toMap());
+					// Exclude fields are removed by the oplog projection,
+					// include fields only with the refetch update strategy
+					if (definition.getIncludeFields() != null
+							&& !OPLOG_COMMAND_OPERATION.equals(operation)
+							&& !MongoDBProjectionHelper
+									.isOplogIncludeProjection(definition)) {
+						object = definition.getFieldFilter().apply(object);
+					}
+					addToStream(operation, oplogTimestamp,
+							MongoDBHelper.asMap(object));
 				}
 			}
 		}
@@ -1036,72 +1795,126 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 		private DBObject getIndexFilter(final BSONTimestamp timestampOverride) {
 			BSONTimestamp time = timestampOverride == null ? getLastTimestamp(mongoOplogNamespace)
 					: timestampOverride;
-			BasicDBObject filter = new BasicDBObject();
-			List<DBObject> values = new ArrayList<DBObject>();
-			List<DBObject> values2 = new ArrayList<DBObject>();
-
-			if (definition.isMongoGridFS()) {
-				values.add(new BasicDBObject(OPLOG_NAMESPACE,
-						mongoOplogNamespace + GRIDFS_FILES_SUFFIX));
-			} else {
-				// values.add(new BasicDBObject(OPLOG_NAMESPACE,
-				// mongoOplogNamespace));
-				values2.add(new BasicDBObject(OPLOG_NAMESPACE,
-						mongoOplogNamespace));
-				values2.add(new BasicDBObject(OPLOG_NAMESPACE, definition.getMongoDb() + "."
-						+ OPLOG_NAMESPACE_COMMAND));
-				values.add(new BasicDBObject(MONGODB_OR_OPERATOR, values2));
-			}
-			if (!definition.getMongoFilter().isEmpty()) {
-				values.add(getMongoFilter());
+			if (time == null) {
+				time = initialImportTimestamp;
 			}
 			if (time == null) {
 				logger.info("No known previous slurping time for this collection");
-			} else {
-				values.add(new BasicDBObject(OPLOG_TIMESTAMP,
-						new BasicDBObject(QueryOperators.GT, time)));
+				// the oplog is tailed from its start
+				if (!definition.isSkipInitialImport()) {
+					return null;
+				}
 			}
-			filter = new BasicDBObject(MONGODB_AND_OPERATOR, values);
+			DBObject filter = getOplogFilter(definition, time);
 			if (logger.isDebugEnabled()) {
 				logger.debug("Using filter: {}", filter);
 			}
 			return filter;
 		}
 
-		private DBObject getMongoFilter() {
-			List<DBObject> filters = new ArrayList<DBObject>();
-			List<DBObject> filters2 = new ArrayList<DBObject>();
-			List<DBObject> filters3 = new ArrayList<DBObject>();
-			// include delete operation
-			filters.add(new BasicDBObject(OPLOG_OPERATION,
-					OPLOG_DELETE_OPERATION));
-
-			// include update, insert in filters3
-			filters3.add(new BasicDBObject(OPLOG_OPERATION,
-					OPLOG_UPDATE_OPERATION));
-			filters3.add(new BasicDBObject(OPLOG_OPERATION,
-					OPLOG_INSERT_OPERATION));
-
-			// include or operation statement in filter2
-			filters2.add(new BasicDBObject(MONGODB_OR_OPERATOR, filters3));
-
-			// include custom filter in filters2
-			filters2.add((DBObject) JSON.parse(definition.getMongoFilter()));
-
-			filters.add(new BasicDBObject(MONGODB_AND_OPERATOR, filters2));
-
-			return new BasicDBObject(MONGODB_OR_OPERATOR, filters);
-		}
-
 		private DBCursor oplogCursor(final BSONTimestamp timestampOverride) {
 			DBObject indexFilter = getIndexFilter(timestampOverride);
 			if (indexFilter == null) {
 				return null;
 			}
-			return oplogCollection.find(indexFilter)
+			DBCursor cursor = oplogCollection
+					.find(indexFilter,
+							MongoDBProjectionHelper.getOplogProjection(definition))
 					.sort(new BasicDBObject(MONGODB_NATURAL_OPERATOR, 1))
 					.addOption(Bytes.QUERYOPTION_TAILABLE)
 					.addOption(Bytes.QUERYOPTION_AWAITDATA);
+			if (definition.isLazyDecoding()) {
+				cursor.setDecoderFactory(LazyOplogDecoder.FACTORY);
+			}
+			return cursor;
+		}
+
+		/*
+		 * Apply the update from the oplog entry itself. Partial updates are
+		 * only used without script as scripts expect the full document.
+		 */
+		@SuppressWarnings("unchecked")
+		private boolean addUpdateToStream(final BSONTimestamp currentTimestamp,
+				final DBObject update, final DBObject object)
+				throws InterruptedException {
+			if (!MongoDBRiverDefinition.UPDATE_STRATEGY_OPLOG.equals(definition
+					.getUpdateStrategy())) {
+				return false;
+			}
+			OplogUpdate oplogUpdate = OplogUpdate.parse(update, object,
+					definition.getFieldFilter());
+			if (oplogUpdate == null) {
+				logger.debug("Cannot apply update from oplog: {}", object);
+				return false;
+			}
+			if (oplogUpdate.isReplacement()) {
+				addToStream(OPLOG_UPDATE_OPERATION, currentTimestamp,
+						MongoDBHelper.asMap(oplogUpdate.getDocument()));
+				return true;
+			}
+			if (definition.getScript() != null) {
+				return false;
+			}
+			if (!oplogUpdate.isEmpty()) {
+				addToStream(new QueueEntry(currentTimestamp,
+						OPLOG_UPDATE_OPERATION, MongoDBHelper.asMap(oplogUpdate
+								.getDocument()), oplogUpdate.getUnsetFields(),
+						slurpedCollection));
+			}
+			return true;
+		}
+
+		/*
+		 * Consecutive updates are fetched with a single $in query.
+		 */
+		private void addRefetchToStream(final BSONTimestamp currentTimestamp,
+				final DBObject update) throws InterruptedException {
+			Object id = update == null ? null : update.get(MONGODB_ID_FIELD);
+			if (definition.getRefetchBatchSize() <= 1 || id == null) {
+				flushRefetchBatch();
+				addQueryToStream(OPLOG_UPDATE_OPERATION, currentTimestamp,
+						update);
+				return;
+			}
+			if (refetchBatch.isEmpty()) {
+				refetchBatchStart = System.currentTimeMillis();
+			}
+			// keep the position of the last update of the document
+			refetchBatch.remove(id);
+			refetchBatch.put(id, currentTimestamp);
+			if (refetchBatch.size() >= definition.getRefetchBatchSize()) {
+				flushRefetchBatch();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void flushRefetchBatch() throws InterruptedException {
+			if (refetchBatch.isEmpty()) {
+				return;
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug("flushRefetchBatch - {} documents",
+						refetchBatch.size());
+			}
+			Map<Object, DBObject> items = new HashMap<Object, DBObject>();
+			DBObject query = new BasicDBObject(MONGODB_ID_FIELD,
+					new BasicDBObject(QueryOperators.IN, new ArrayList<Object>(
+							refetchBatch.keySet())));
+			long start = System.nanoTime();
+			for (DBObject item : slurpedCollection.find(query, findKeys)) {
+				items.put(item.get(MONGODB_ID_FIELD), item);
+			}
+			recordRefetch(start);
+			// Send the documents in oplog order
+			for (Map.Entry<Object, BSONTimestamp> entry : refetchBatch
+					.entrySet()) {
+				DBObject item = items.get(entry.getKey());
+				if (item != null) {
+					enqueue(new QueueEntry(entry.getValue(),
+							OPLOG_UPDATE_OPERATION, MongoDBHelper.asMap(item)));
+				}
+			}
+			refetchBatch.clear();
 		}
 
 		@SuppressWarnings("unchecked")
@@ -1114,8 +1927,22 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 						operation, currentTimestamp, update);
 			}
 
-			for (DBObject item : slurpedCollection.find(update, findKeys)) {
-				addToStream(operation, currentTimestamp, item.toMap());
+			// the query is sent with the first hasNext
+			long start = System.nanoTime();
+			DBCursor cursor = slurpedCollection.find(update, findKeys);
+			boolean found = cursor.hasNext();
+			recordRefetch(start);
+			while (found) {
+				addToStream(operation, currentTimestamp,
+						MongoDBHelper.asMap(cursor.next()));
+				found = cursor.hasNext();
+			}
+		}
+
+		private void recordRefetch(final long start) {
+			Tracer tracer = stats.getTracer();
+			if (tracer != null) {
+				tracer.record(Tracer.REFETCH_STAGE, System.nanoTime() - start);
 			}
 		}
 
@@ -1127,26 +1954,211 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 						"addToStream - operation [{}], currentTimestamp [{}], data [{}]",
 						operation, currentTimestamp, data);
 			}
-			data.put(OPLOG_TIMESTAMP, currentTimestamp);
-			data.put(OPLOG_OPERATION, operation);
+			addToStream(new QueueEntry(currentTimestamp, operation, data));
+		}
 
-			// stream.add(data);
-			stream.put(data);
-			// try {
-			// stream.put(data);
-			// } catch (InterruptedException e) {
-			// e.printStackTrace();
-			// }
+		/*
+		 * Updates waiting to be fetched are sent first to keep the oplog
+		 * order.
+		 */
+		private void addToStream(final QueueEntry entry)
+				throws InterruptedException {
+			flushRefetchBatch();
+			enqueue(entry);
 		}
 
 	}
 
+	/*
+	 * Documents are sent to the indexers by _id so the operations of a
+	 * document are applied in order. A command is processed once all the
+	 * previous entries have been indexed and before the next ones.
+	 */
+	private void enqueue(final QueueEntry entry) throws InterruptedException {
+		boolean command = OPLOG_COMMAND_OPERATION.equals(entry.getOperation());
+		if (command) {
+			checkpoints.waitForAll();
+		}
+		entry.setSequence(checkpoints.add(getLane(entry), entry));
+		// the first document queued for the traced entry carries the trace
+		Trace trace = slurpedTrace.get();
+		if (trace != null && trace.isFor(entry.getOplogTimestamp())) {
+			trace.mark(Tracer.SLURP_STAGE);
+			entry.setTrace(trace);
+			slurpedTrace.remove();
+		}
+		streams.get(getStream(entry.getData(), streams.size())).put(entry);
+		if (command) {
+			checkpoints.waitForAll();
+		}
+	}
+
+	/*
+	 * Indexer of a document, from the _id used in the index: the GridFS
+	 * files are added with a String _id and deleted with an ObjectId.
+	 */
+	public static int getStream(final Map<String, Object> data,
+			final int streams) {
+		if (data == null || data.get(MONGODB_ID_FIELD) == null) {
+			return 0;
+		}
+		return (data.get(MONGODB_ID_FIELD).toString().hashCode() & Integer.MAX_VALUE)
+				% streams;
+	}
+
+	/*
+	 * Oplog entries and each range of the initial import have their own
+	 * checkpoint.
+	 */
+	private Object getLane(final QueueEntry entry) {
+		if (entry.getImportRange() != null) {
+			return entry.getImportRange();
+		}
+		return mongoOplogNamespace;
+	}
+
+	/*
+	 * Writes the checkpoints moved by the acknowledged bulks. The writes are
+	 * done by a single thread so they are applied in order.
+	 */
+	private void saveCheckpoints(
+			final CheckpointTracker<Object, QueueEntry> checkpoints) {
+		ExecutorService executor = checkpointExecutor;
+		if (executor == null) {
+			return;
+		}
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				BSONTimestamp timestamp = null;
+				// one import per shard
+				Set<InitialImport> initialImports = new LinkedHashSet<InitialImport>();
+				for (QueueEntry entry : checkpoints.drainCheckpoints()
+						.values()) {
+					InitialImport.Range range = entry.getImportRange();
+					if (range == null) {
+						timestamp = entry.getOplogTimestamp();
+					} else {
+						if (entry.getData() == null) {
+							range.setDone(true);
+						} else {
+							range.setLastId(entry.getData().get(
+									MONGODB_ID_FIELD));
+						}
+						initialImports.add(range.getInitialImport());
+					}
+				}
+				// The oplog is tailed from the initial import timestamp
+				for (InitialImport initialImport : initialImports) {
+					if (timestamp == null && lastSavedTimestamp == null
+							&& initialImport.isDone()) {
+						timestamp = initialImport.getTimestamp();
+					}
+				}
+				if (timestamp == null && initialImports.isEmpty()) {
+					return;
+				}
+				BulkRequestBuilder bulk = client.prepareBulk();
+				if (timestamp != null) {
+					updateLastTimestamp(mongoOplogNamespace, timestamp, bulk);
+					lastSavedTimestamp = timestamp;
+				}
+				for (InitialImport initialImport : initialImports) {
+					updateInitialImport(mongoOplogNamespace, initialImport,
+							bulk);
+				}
+				try {
+					BulkResponse response = bulk.execute().actionGet();
+					if (response.hasFailures()) {
+						logger.warn("failed to save checkpoint"
+								+ response.buildFailureMessage());
+					} else {
+						stats.setLastIndexedTimestamp(timestamp);
+					}
+				} catch (ElasticSearchInterruptedException esie) {
+					Thread.currentThread().interrupt();
+				} catch (Exception e) {
+					logger.warn("failed to save checkpoint", e);
+				}
+			}
+		});
+	}
+
+	private int getQueueDepth() {
+		int depth = 0;
+		for (BlockingQueue<QueueEntry> stream : streams) {
+			depth += stream.size();
+		}
+		return depth;
+	}
+
+	/*
+	 * The statistics are written to the river index (_mongodbstats) and to
+	 * the stats index if set. Other reporters can be added.
+	 */
+	public void addStatsReporter(StatsReporter reporter) {
+		statsReporters.add(reporter);
+	}
+
+	private void reportStats() {
+		updateOplogHead();
+		int queueDepth = getQueueDepth();
+		for (StatsReporter reporter : statsReporters) {
+			try {
+				reporter.report(stats, queueDepth);
+			} catch (ElasticSearchInterruptedException esie) {
+				Thread.currentThread().interrupt();
+			} catch (Exception e) {
+				logger.warn("failed to report river statistics", e);
+			}
+		}
+	}
+
+	/*
+	 * Newest entry of the river in the oplog, so the lag includes the
+	 * entries the slurper has not read yet. The oplog is read backward from
+	 * its end for entries after the last indexed timestamp; if none is found
+	 * in the last OPLOG_HEAD_MAX_SCAN entries the previous head is kept.
+	 */
+	private void updateOplogHead() {
+		DBCollection oplog = slurpedOplog;
+		BSONTimestamp indexed = stats.getLastIndexedTimestamp();
+		if (oplog == null || indexed == null) {
+			return;
+		}
+		DBCursor cursor = null;
+		try {
+			cursor = oplog
+					.find(getOplogFilter(definition, indexed),
+							new BasicDBObject(OPLOG_TIMESTAMP, 1))
+					.sort(new BasicDBObject(MONGODB_NATURAL_OPERATOR, -1))
+					.limit(1).addSpecial("$maxScan", OPLOG_HEAD_MAX_SCAN);
+			if (cursor.hasNext()) {
+				stats.setOplogHeadTimestamp((BSONTimestamp) cursor.next().get(
+						OPLOG_TIMESTAMP));
+			}
+		} catch (MongoException e) {
+			logger.warn("failed to read the head of the oplog", e);
+		} finally {
+			if (cursor != null) {
+				cursor.close();
+			}
+		}
+	}
+
 	private class Status implements Runnable {
 
 		@Override
 		public void run() {
+			long lastStats = System.nanoTime();
 			while (true) {
 				try {
+					if (active
+							&& System.nanoTime() - lastStats >= definition
+									.getStatsInterval().nanos()) {
+						lastStats = System.nanoTime();
+						reportStats();
+					}
 					if (startInvoked) {
 						// logger.trace("*** river status thread waiting: {} ***",
 						// riverName.getName());
@@ -1178,6 +2190,179 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 		}
 	}
 
+	/*
+	 * Oplog entries of the collection (or of the GridFS files) and of the
+	 * commands of the database after the timestamp (if not null).
+	 */
+	static DBObject getOplogFilter(final MongoDBRiverDefinition definition,
+			final BSONTimestamp time) {
+		String mongoOplogNamespace = definition.getMongoDb() + "."
+				+ definition.getMongoCollection();
+		List<DBObject> values = new ArrayList<DBObject>();
+		List<DBObject> values2 = new ArrayList<DBObject>();
+
+		if (definition.isMongoGridFS()) {
+			values.add(new BasicDBObject(OPLOG_NAMESPACE,
+					mongoOplogNamespace + GRIDFS_FILES_SUFFIX));
+		} else {
+			// values.add(new BasicDBObject(OPLOG_NAMESPACE,
+			// mongoOplogNamespace));
+			values2.add(new BasicDBObject(OPLOG_NAMESPACE,
+					mongoOplogNamespace));
+			values2.add(new BasicDBObject(OPLOG_NAMESPACE, definition.getMongoDb() + "."
+					+ OPLOG_NAMESPACE_COMMAND));
+			values.add(new BasicDBObject(MONGODB_OR_OPERATOR, values2));
+		}
+		if (!definition.getMongoFilter().isEmpty()) {
+			values.add(getMongoFilter(definition));
+		}
+		if (time != null) {
+			values.add(new BasicDBObject(OPLOG_TIMESTAMP, new BasicDBObject(
+					QueryOperators.GT, time)));
+		}
+		values.add(new BasicDBObject(OPLOG_FROM_MIGRATE,
+				new BasicDBObject(QueryOperators.NE, true)));
+		return new BasicDBObject(MONGODB_AND_OPERATOR, values);
+	}
+
+	private static DBObject getMongoFilter(
+			final MongoDBRiverDefinition definition) {
+		List<DBObject> filters = new ArrayList<DBObject>();
+		List<DBObject> filters2 = new ArrayList<DBObject>();
+		List<DBObject> filters3 = new ArrayList<DBObject>();
+		// include delete operation
+		filters.add(new BasicDBObject(OPLOG_OPERATION,
+				OPLOG_DELETE_OPERATION));
+
+		// include update, insert in filters3
+		filters3.add(new BasicDBObject(OPLOG_OPERATION,
+				OPLOG_UPDATE_OPERATION));
+		filters3.add(new BasicDBObject(OPLOG_OPERATION,
+				OPLOG_INSERT_OPERATION));
+
+		// include or operation statement in filter2
+		filters2.add(new BasicDBObject(MONGODB_OR_OPERATOR, filters3));
+
+		// include custom filter in filters2
+		filters2.add((DBObject) JSON.parse(definition.getMongoFilter()));
+
+		filters.add(new BasicDBObject(MONGODB_AND_OPERATOR, filters2));
+
+		return new BasicDBObject(MONGODB_OR_OPERATOR, filters);
+	}
+
+	protected static class QueueEntry {
+
+		private final BSONTimestamp oplogTimestamp;
+		private final String operation;
+		private final Map<String, Object> data;
+		private final InitialImport.Range importRange;
+		private final List<String> unsetFields;
+		private final DBCollection collection;
+		private long sequence;
+		private volatile Trace trace;
+
+		public QueueEntry(BSONTimestamp oplogTimestamp, String operation,
+				Map<String, Object> data) {
+			this(oplogTimestamp, operation, data, null, null, null);
+		}
+
+		public QueueEntry(BSONTimestamp oplogTimestamp, String operation,
+				Map<String, Object> data, InitialImport.Range importRange) {
+			this(oplogTimestamp, operation, data, importRange, null, null);
+		}
+
+		/*
+		 * Partial update: data contains the fields to merge. The document is
+		 * fetched from the collection if it is missing from the index.
+		 */
+		public QueueEntry(BSONTimestamp oplogTimestamp, String operation,
+				Map<String, Object> data, List<String> unsetFields,
+				DBCollection collection) {
+			this(oplogTimestamp, operation, data, null, unsetFields,
+					collection);
+		}
+
+		private QueueEntry(BSONTimestamp oplogTimestamp, String operation,
+				Map<String, Object> data, InitialImport.Range importRange,
+				List<String> unsetFields, DBCollection collection) {
+			this.oplogTimestamp = oplogTimestamp;
+			this.operation = operation;
+			this.data = data;
+			this.importRange = importRange;
+			this.unsetFields = unsetFields;
+			this.collection = collection;
+		}
+
+		/*
+		 * Entry fetching the document of a partial update which failed.
+		 * It keeps the timestamp of the update.
+		 */
+		public QueueEntry toRefetch() {
+			Map<String, Object> id = new HashMap<String, Object>();
+			id.put(MONGODB_ID_FIELD, data.get(MONGODB_ID_FIELD));
+			return new QueueEntry(oplogTimestamp, OPLOG_UPDATE_OPERATION, id,
+					null, null, collection);
+		}
+
+		/*
+		 * Resolved by the indexer: data only contains the _id to fetch.
+		 */
+		public boolean isRefetch() {
+			return collection != null && unsetFields == null;
+		}
+
+		public DBCollection getCollection() {
+			return collection;
+		}
+
+		public BSONTimestamp getOplogTimestamp() {
+			return oplogTimestamp;
+		}
+
+		public String getOperation() {
+			return operation;
+		}
+
+		public Map<String, Object> getData() {
+			return data;
+		}
+
+		public InitialImport.Range getImportRange() {
+			return importRange;
+		}
+
+		public boolean isPartialUpdate() {
+			return unsetFields != null;
+		}
+
+		/*
+		 * Null unless the oplog entry is traced.
+		 */
+		public Trace getTrace() {
+			return trace;
+		}
+
+		public void setTrace(Trace trace) {
+			this.trace = trace;
+		}
+
+		public List<String> getUnsetFields() {
+			return unsetFields;
+		}
+
+		/*
+		 * Position of the entry in its lane, used to acknowledge it.
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		public void setSequence(long sequence) {
+			this.sequence = sequence;
+		}
+	}
+
 	private XContentBuilder getGridFSMapping() throws IOException {
 		XContentBuilder mapping = jsonBuilder().startObject()
 				.startObject(definition.getTypeName()).startObject("properties")
@@ -1248,4 +2433,75 @@ public class MongoDBRiver extends AbstractRiverComponent implements River {
 		}
 	}
 
+	/**
+	 * Get the initial import progress for a given namespace and shard.
+	 */
+	@SuppressWarnings("unchecked")
+	private InitialImport getInitialImport(final String namespace,
+			final String shard) {
+		GetResponse response = client
+				.prepareGet(riverIndexName, riverName.getName(),
+						getInitialImportId(namespace, shard)).execute()
+				.actionGet();
+		if (response.isExists()) {
+			Object initialImport = XContentMapValues.extractValue(TYPE + "."
+					+ INITIAL_IMPORT_FIELD, response.getSourceAsMap());
+			if (initialImport instanceof Map) {
+				return InitialImport.parse(shard,
+						(Map<String, Object>) initialImport);
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * The slurpers of a sharded collection write the progress of their
+	 * import to their own document.
+	 */
+	public static String getInitialImportId(final String namespace,
+			final String shard) {
+		if (shard == null) {
+			return namespace + INITIAL_IMPORT_ID_SUFFIX;
+		}
+		return namespace + INITIAL_IMPORT_ID_SUFFIX + "." + shard;
+	}
+
+	private void saveInitialImport(final String namespace,
+			final InitialImport initialImport) {
+		IndexRequest request = initialImportRequest(namespace, initialImport);
+		if (request != null) {
+			client.index(request).actionGet();
+		}
+	}
+
+	/**
+	 * Adds an index request operation to a bulk request, updating the initial
+	 * import progress for a given namespace
+	 */
+	private void updateInitialImport(final String namespace,
+			final InitialImport initialImport, final BulkRequestBuilder bulk) {
+		IndexRequest request = initialImportRequest(namespace, initialImport);
+		if (request != null) {
+			bulk.add(request);
+		}
+	}
+
+	private IndexRequest initialImportRequest(final String namespace,
+			final InitialImport initialImport) {
+		try {
+			XContentBuilder source = jsonBuilder().startObject()
+					.startObject(TYPE).startObject(INITIAL_IMPORT_FIELD);
+			initialImport.toXContent(source);
+			source.endObject().endObject().endObject();
+			return indexRequest(riverIndexName)
+					.type(riverName.getName())
+					.id(getInitialImportId(namespace, initialImport.getShard()))
+					.source(source);
+		} catch (IOException e) {
+			logger.error("error updating initial import for namespace {}",
+					namespace);
+			return null;
+		}
+	}
+
 }
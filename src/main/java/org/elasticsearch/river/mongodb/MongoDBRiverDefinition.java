@@ -2,6 +2,7 @@ package org.elasticsearch.river.mongodb;
 
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -12,10 +13,15 @@ import org.bson.types.BSONTimestamp;
 import org.elasticsearch.common.collect.Maps;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.elasticsearch.river.RiverName;
 import org.elasticsearch.river.RiverSettings;
+import org.elasticsearch.river.mongodb.util.FieldFilter;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.ScriptService;
 
@@ -29,6 +35,10 @@ public class MongoDBRiverDefinition {
 	// defaults
 	public final static String DEFAULT_DB_HOST = "localhost";
 	public final static int DEFAULT_DB_PORT = 27017;
+	public final static String UPDATE_STRATEGY_REFETCH = "refetch";
+	public final static String UPDATE_STRATEGY_OPLOG = "oplog";
+	public final static String SOURCE_FORMAT_JSON = "json";
+	public final static String SOURCE_FORMAT_SMILE = "smile";
 
 	// fields
 	public final static String DB_FIELD = "db";
@@ -41,16 +51,27 @@ public class MongoDBRiverDefinition {
 	public final static String SSL_VERIFY_CERT_FIELD = "ssl_verify_certificate";
 	public final static String DROP_COLLECTION_FIELD = "drop_collection";
 	public final static String EXCLUDE_FIELDS_FIELD = "exclude_fields";
+	public final static String INCLUDE_FIELDS_FIELD = "include_fields";
 	public final static String INCLUDE_COLLECTION_FIELD = "include_collection";
 	public final static String INITIAL_TIMESTAMP_FIELD = "initial_timestamp";
 	public final static String INITIAL_TIMESTAMP_SCRIPT_TYPE_FIELD = "script_type";
 	public final static String INITIAL_TIMESTAMP_SCRIPT_FIELD = "script";
+	public final static String INITIAL_IMPORT_PARALLELISM_FIELD = "initial_import_parallelism";
+	public final static String SKIP_INITIAL_IMPORT_FIELD = "skip_initial_import";
+	public final static String UPDATE_STRATEGY_FIELD = "update_strategy";
+	public final static String REFETCH_BATCH_SIZE_FIELD = "refetch_batch_size";
+	public final static String REFETCH_BATCH_TIMEOUT_FIELD = "refetch_batch_timeout";
+	public final static String LAZY_DECODING_FIELD = "lazy_decoding";
 	public final static String FILTER_FIELD = "filter";
 	public final static String CREDENTIALS_FIELD = "credentials";
 	public final static String USER_FIELD = "user";
 	public final static String PASSWORD_FIELD = "password";
 	public final static String SCRIPT_FIELD = "script";
 	public final static String SCRIPT_TYPE_FIELD = "script_type";
+	public final static String SCRIPT_THREADS_FIELD = "script_threads";
+	public final static String SCRIPT_MODE_FIELD = "script_mode";
+	public final static String SCRIPT_MODE_DOCUMENT = "document";
+	public final static String SCRIPT_MODE_BATCH = "batch";
 	public final static String COLLECTION_FIELD = "collection";
 	public final static String GRIDFS_FIELD = "gridfs";
 	public final static String INDEX_OBJECT = "index";
@@ -61,6 +82,20 @@ public class MongoDBRiverDefinition {
 	public final static String THROTTLE_SIZE_FIELD = "throttle_size";
 	public final static String BULK_SIZE_FIELD = "bulk_size";
 	public final static String BULK_TIMEOUT_FIELD = "bulk_timeout";
+	public final static String BULK_SIZE_BYTES_FIELD = "bulk_size_bytes";
+	public final static String SOURCE_FORMAT_FIELD = "source_format";
+	public final static String ADAPTIVE_BULK_FIELD = "adaptive_bulk";
+	public final static String MIN_BULK_SIZE_FIELD = "min_bulk_size";
+	public final static String MAX_BULK_SIZE_FIELD = "max_bulk_size";
+	public final static String MIN_BULK_TIMEOUT_FIELD = "min_bulk_timeout";
+	public final static String MAX_BULK_TIMEOUT_FIELD = "max_bulk_timeout";
+	public final static String TARGET_LATENCY_FIELD = "target_latency";
+	public final static String CONCURRENT_BULK_REQUESTS_FIELD = "concurrent_bulk_requests";
+	public final static String INDEXER_THREADS_FIELD = "indexer_threads";
+	public final static String STATS_FIELD = "stats";
+	public final static String STATS_INTERVAL_FIELD = "interval";
+	public final static String STATS_INDEX_FIELD = "index";
+	public final static String TRACE_SAMPLE_RATE_FIELD = "trace_sample_rate";
 
 	// mongodb.servers
 	private final List<ServerAddress> mongoServers = new ArrayList<ServerAddress>();
@@ -80,15 +115,42 @@ public class MongoDBRiverDefinition {
 	private final boolean mongoSSLVerifyCertificate;
 	private final boolean dropCollection;
 	private final Set<String> excludeFields;
+	private final FieldFilter excludeFilter;
+	private final Set<String> includeFields;
+	private final FieldFilter includeFilter;
 	private final String includeCollection;
 	private final BSONTimestamp initialTimestamp;
+	private final int initialImportParallelism;
+	private final boolean skipInitialImport;
+	private final String updateStrategy;
+	private final int refetchBatchSize;
+	private final TimeValue refetchBatchTimeout;
+	private final boolean lazyDecoding;
 	private final String script;
 	private final String scriptType;
+	private final int scriptThreads;
+	private final String scriptMode;
 	// index
 	private final String indexName;
 	private final String typeName;
 	private final int bulkSize;
 	private final TimeValue bulkTimeout;
+	private final ByteSizeValue bulkSizeBytes;
+	private final XContentType sourceFormat;
+	// index.stats
+	private final TimeValue statsInterval;
+	private final String statsIndexName;
+	private final String statsTypeName;
+	private final double traceSampleRate;
+	// index.adaptive_bulk
+	private final boolean adaptiveBulk;
+	private final int minBulkSize;
+	private final int maxBulkSize;
+	private final TimeValue minBulkTimeout;
+	private final TimeValue maxBulkTimeout;
+	private final TimeValue targetBulkLatency;
+	private final int concurrentBulkRequests;
+	private final int indexerThreads;
 	private final int throttleSize;
 
 	public static class Builder {
@@ -110,15 +172,41 @@ public class MongoDBRiverDefinition {
 		private boolean mongoSSLVerifyCertificate = false;
 		private boolean dropCollection = false;
 		private Set<String> excludeFields = null;
+		private Set<String> includeFields = null;
 		private String includeCollection = "";
 		private BSONTimestamp initialTimestamp = null;
+		private int initialImportParallelism = 1;
+		private boolean skipInitialImport = false;
+		private String updateStrategy = UPDATE_STRATEGY_REFETCH;
+		private int refetchBatchSize = 100;
+		private TimeValue refetchBatchTimeout = TimeValue.timeValueMillis(10);
+		private boolean lazyDecoding = false;
 		private String script = null;
 		private String scriptType = null;
+		private int scriptThreads = 1;
+		private String scriptMode = SCRIPT_MODE_DOCUMENT;
 		// index
 		private String indexName;
 		private String typeName;
 		private int bulkSize;
 		private TimeValue bulkTimeout;
+		private ByteSizeValue bulkSizeBytes = new ByteSizeValue(5,
+				ByteSizeUnit.MB);
+		private XContentType sourceFormat = XContentType.JSON;
+		// index.stats
+		private TimeValue statsInterval = TimeValue.timeValueSeconds(10);
+		private String statsIndexName = null;
+		private String statsTypeName = null;
+		private double traceSampleRate = 0;
+		// index.adaptive_bulk
+		private boolean adaptiveBulk = false;
+		private int minBulkSize = 10;
+		private int maxBulkSize = 1000;
+		private TimeValue minBulkTimeout = TimeValue.timeValueMillis(1);
+		private TimeValue maxBulkTimeout = TimeValue.timeValueMillis(500);
+		private TimeValue targetBulkLatency = TimeValue.timeValueSeconds(1);
+		private int concurrentBulkRequests = 1;
+		private int indexerThreads = 1;
 		private int throttleSize;
 
 		public Builder mongoServers(List<ServerAddress> mongoServers) {
@@ -193,6 +281,11 @@ public class MongoDBRiverDefinition {
 			return this;
 		}
 
+		public Builder includeFields(Set<String> includeFields) {
+			this.includeFields = includeFields;
+			return this;
+		}
+
 		public Builder includeCollection(String includeCollection) {
 			this.includeCollection = includeCollection;
 			return this;
@@ -203,6 +296,36 @@ public class MongoDBRiverDefinition {
 			return this;
 		}
 
+		public Builder initialImportParallelism(int initialImportParallelism) {
+			this.initialImportParallelism = initialImportParallelism;
+			return this;
+		}
+
+		public Builder skipInitialImport(boolean skipInitialImport) {
+			this.skipInitialImport = skipInitialImport;
+			return this;
+		}
+
+		public Builder updateStrategy(String updateStrategy) {
+			this.updateStrategy = updateStrategy;
+			return this;
+		}
+
+		public Builder refetchBatchSize(int refetchBatchSize) {
+			this.refetchBatchSize = refetchBatchSize;
+			return this;
+		}
+
+		public Builder refetchBatchTimeout(TimeValue refetchBatchTimeout) {
+			this.refetchBatchTimeout = refetchBatchTimeout;
+			return this;
+		}
+
+		public Builder lazyDecoding(boolean lazyDecoding) {
+			this.lazyDecoding = lazyDecoding;
+			return this;
+		}
+
 		public Builder script(String script) {
 			this.script = script;
 			return this;
@@ -213,6 +336,16 @@ public class MongoDBRiverDefinition {
 			return this;
 		}
 
+		public Builder scriptThreads(int scriptThreads) {
+			this.scriptThreads = scriptThreads;
+			return this;
+		}
+
+		public Builder scriptMode(String scriptMode) {
+			this.scriptMode = scriptMode;
+			return this;
+		}
+
 		public Builder indexName(String indexName) {
 			this.indexName = indexName;
 			return this;
@@ -233,6 +366,76 @@ public class MongoDBRiverDefinition {
 			return this;
 		}
 
+		public Builder bulkSizeBytes(ByteSizeValue bulkSizeBytes) {
+			this.bulkSizeBytes = bulkSizeBytes;
+			return this;
+		}
+
+		public Builder sourceFormat(XContentType sourceFormat) {
+			this.sourceFormat = sourceFormat;
+			return this;
+		}
+
+		public Builder statsInterval(TimeValue statsInterval) {
+			this.statsInterval = statsInterval;
+			return this;
+		}
+
+		public Builder statsIndexName(String statsIndexName) {
+			this.statsIndexName = statsIndexName;
+			return this;
+		}
+
+		public Builder statsTypeName(String statsTypeName) {
+			this.statsTypeName = statsTypeName;
+			return this;
+		}
+
+		public Builder traceSampleRate(double traceSampleRate) {
+			this.traceSampleRate = traceSampleRate;
+			return this;
+		}
+
+		public Builder adaptiveBulk(boolean adaptiveBulk) {
+			this.adaptiveBulk = adaptiveBulk;
+			return this;
+		}
+
+		public Builder minBulkSize(int minBulkSize) {
+			this.minBulkSize = minBulkSize;
+			return this;
+		}
+
+		public Builder maxBulkSize(int maxBulkSize) {
+			this.maxBulkSize = maxBulkSize;
+			return this;
+		}
+
+		public Builder minBulkTimeout(TimeValue minBulkTimeout) {
+			this.minBulkTimeout = minBulkTimeout;
+			return this;
+		}
+
+		public Builder maxBulkTimeout(TimeValue maxBulkTimeout) {
+			this.maxBulkTimeout = maxBulkTimeout;
+			return this;
+		}
+
+		public Builder targetBulkLatency(TimeValue targetBulkLatency) {
+			this.targetBulkLatency = targetBulkLatency;
+			return this;
+		}
+
+		public Builder concurrentBulkRequests(int concurrentBulkRequests) {
+			this.concurrentBulkRequests = concurrentBulkRequests;
+			return this;
+		}
+
+		public Builder indexerThreads(int indexerThreads) {
+			this.indexerThreads = indexerThreads;
+			return this;
+		}
+
 		public Builder throttleSize(int throttleSize) {
 			this.throttleSize = throttleSize;
 			return this;
@@ -331,6 +534,29 @@ public class MongoDBRiverDefinition {
 
 					builder.excludeFields(excludeFields);
 				}
+				// an empty list is the same as no include fields
+				Set<String> includeFields = new HashSet<String>();
+				if (mongoOptionsSettings.containsKey(INCLUDE_FIELDS_FIELD)) {
+					Object includeFieldsSettings = mongoOptionsSettings
+							.get(INCLUDE_FIELDS_FIELD);
+					if (!XContentMapValues.isArray(includeFieldsSettings)) {
+						throw new SettingsException(String.format(
+								"%s must be an array of fields [%s]",
+								INCLUDE_FIELDS_FIELD, includeFieldsSettings));
+					}
+					for (Object field : (List<Object>) includeFieldsSettings) {
+						includeFields.add(field.toString());
+					}
+				}
+				if (!includeFields.isEmpty()) {
+					if (builder.excludeFields != null) {
+						logger.warn("{} and {} cannot be used together. {} is ignored.",
+								INCLUDE_FIELDS_FIELD, EXCLUDE_FIELDS_FIELD,
+								EXCLUDE_FIELDS_FIELD);
+						builder.excludeFields(null);
+					}
+					builder.includeFields(includeFields);
+				}
 				if (mongoOptionsSettings.containsKey(INITIAL_TIMESTAMP_FIELD)) {
 					BSONTimestamp timeStamp = null;
 					try {
@@ -369,6 +595,39 @@ public class MongoDBRiverDefinition {
 						builder.initialTimestamp(timeStamp);
 					}
 				}
+				int initialImportParallelism = XContentMapValues
+						.nodeIntegerValue(mongoOptionsSettings
+								.get(INITIAL_IMPORT_PARALLELISM_FIELD), 1);
+				if (initialImportParallelism < 1) {
+					logger.warn("Invalid {} [{}]. Use 1 instead.",
+							INITIAL_IMPORT_PARALLELISM_FIELD,
+							initialImportParallelism);
+					initialImportParallelism = 1;
+				}
+				builder.initialImportParallelism(initialImportParallelism);
+				builder.skipInitialImport(XContentMapValues.nodeBooleanValue(
+						mongoOptionsSettings.get(SKIP_INITIAL_IMPORT_FIELD),
+						false));
+				String updateStrategy = XContentMapValues.nodeStringValue(
+						mongoOptionsSettings.get(UPDATE_STRATEGY_FIELD),
+						UPDATE_STRATEGY_REFETCH);
+				if (!UPDATE_STRATEGY_REFETCH.equals(updateStrategy)
+						&& !UPDATE_STRATEGY_OPLOG.equals(updateStrategy)) {
+					logger.warn("Invalid {} [{}]. Use {} instead.",
+							UPDATE_STRATEGY_FIELD, updateStrategy,
+							UPDATE_STRATEGY_REFETCH);
+					updateStrategy = UPDATE_STRATEGY_REFETCH;
+				}
+				builder.updateStrategy(updateStrategy);
+				builder.refetchBatchSize(Math.max(1, XContentMapValues
+						.nodeIntegerValue(mongoOptionsSettings
+								.get(REFETCH_BATCH_SIZE_FIELD), 100)));
+				builder.refetchBatchTimeout(TimeValue.parseTimeValue(
+						XContentMapValues.nodeStringValue(mongoOptionsSettings
+								.get(REFETCH_BATCH_TIMEOUT_FIELD), "10ms"),
+						TimeValue.timeValueMillis(10)));
+				builder.lazyDecoding(XContentMapValues.nodeBooleanValue(
+						mongoOptionsSettings.get(LAZY_DECODING_FIELD), false));
 			}
 
 			// Credentials
@@ -440,6 +699,19 @@ public class MongoDBRiverDefinition {
 							.toString();
 				}
 				builder.scriptType(scriptType);
+				builder.scriptThreads(Math.max(1, XContentMapValues
+						.nodeIntegerValue(
+								mongoSettings.get(SCRIPT_THREADS_FIELD), 1)));
+				String scriptMode = XContentMapValues.nodeStringValue(
+						mongoSettings.get(SCRIPT_MODE_FIELD),
+						SCRIPT_MODE_DOCUMENT);
+				if (SCRIPT_MODE_DOCUMENT.equals(scriptMode)
+						|| SCRIPT_MODE_BATCH.equals(scriptMode)) {
+					builder.scriptMode(scriptMode);
+				} else {
+					logger.warn("Invalid script mode [{}], using [{}]",
+							scriptMode, SCRIPT_MODE_DOCUMENT);
+				}
 			}
 		} else {
 			mongoHost = DEFAULT_DB_HOST;
@@ -472,6 +744,67 @@ public class MongoDBRiverDefinition {
 			} else {
 				builder.bulkTimeout(TimeValue.timeValueMillis(10));
 			}
+			builder.concurrentBulkRequests(Math.max(1, XContentMapValues
+					.nodeIntegerValue(
+							indexSettings.get(CONCURRENT_BULK_REQUESTS_FIELD), 1)));
+			if (indexSettings.containsKey(BULK_SIZE_BYTES_FIELD)) {
+				builder.bulkSizeBytes(ByteSizeValue.parseBytesSizeValue(
+						XContentMapValues.nodeStringValue(
+								indexSettings.get(BULK_SIZE_BYTES_FIELD), "5mb"),
+						new ByteSizeValue(5, ByteSizeUnit.MB)));
+			}
+			String sourceFormat = XContentMapValues.nodeStringValue(
+					indexSettings.get(SOURCE_FORMAT_FIELD), SOURCE_FORMAT_JSON);
+			if (SOURCE_FORMAT_SMILE.equals(sourceFormat)) {
+				builder.sourceFormat(XContentType.SMILE);
+			} else if (!SOURCE_FORMAT_JSON.equals(sourceFormat)) {
+				logger.warn("Invalid source format [{}], using [{}]",
+						sourceFormat, SOURCE_FORMAT_JSON);
+			}
+			Object adaptiveBulk = indexSettings.get(ADAPTIVE_BULK_FIELD);
+			if (adaptiveBulk instanceof Map
+					|| XContentMapValues.nodeBooleanValue(adaptiveBulk, false)) {
+				Map<String, Object> adaptiveSettings = adaptiveBulk instanceof Map ? (Map<String, Object>) adaptiveBulk
+						: Collections.<String, Object> emptyMap();
+				builder.adaptiveBulk(true);
+				builder.minBulkSize(Math.max(1, XContentMapValues
+						.nodeIntegerValue(
+								adaptiveSettings.get(MIN_BULK_SIZE_FIELD), 10)));
+				builder.maxBulkSize(Math.max(builder.minBulkSize,
+						XContentMapValues.nodeIntegerValue(
+								adaptiveSettings.get(MAX_BULK_SIZE_FIELD),
+								bulkSize * 10)));
+				builder.minBulkTimeout(TimeValue.parseTimeValue(
+						XContentMapValues.nodeStringValue(
+								adaptiveSettings.get(MIN_BULK_TIMEOUT_FIELD),
+								null), TimeValue.timeValueMillis(1)));
+				builder.maxBulkTimeout(TimeValue.parseTimeValue(
+						XContentMapValues.nodeStringValue(
+								adaptiveSettings.get(MAX_BULK_TIMEOUT_FIELD),
+								null), TimeValue.timeValueMillis(500)));
+				builder.targetBulkLatency(TimeValue.parseTimeValue(
+						XContentMapValues.nodeStringValue(
+								adaptiveSettings.get(TARGET_LATENCY_FIELD),
+								null), TimeValue.timeValueSeconds(1)));
+			}
+			if (indexSettings.get(STATS_FIELD) instanceof Map) {
+				Map<String, Object> statsSettings = (Map<String, Object>) indexSettings
+						.get(STATS_FIELD);
+				builder.statsInterval(TimeValue.parseTimeValue(
+						XContentMapValues.nodeStringValue(
+								statsSettings.get(STATS_INTERVAL_FIELD), null),
+						TimeValue.timeValueSeconds(10)));
+				builder.statsIndexName(XContentMapValues.nodeStringValue(
+						statsSettings.get(STATS_INDEX_FIELD), null));
+				builder.statsTypeName(XContentMapValues.nodeStringValue(
+						statsSettings.get(TYPE_FIELD), riverName.getName()));
+				builder.traceSampleRate(Math.min(1, Math.max(0,
+						XContentMapValues.nodeDoubleValue(
+								statsSettings.get(TRACE_SAMPLE_RATE_FIELD), 0))));
+			}
+			builder.indexerThreads(Math.max(1, XContentMapValues
+					.nodeIntegerValue(indexSettings.get(INDEXER_THREADS_FIELD),
+							1)));
 			builder.throttleSize(XContentMapValues.nodeIntegerValue(
 					indexSettings.get(THROTTLE_SIZE_FIELD), bulkSize * 5));
 		} else {
@@ -503,15 +836,40 @@ public class MongoDBRiverDefinition {
 		this.mongoSSLVerifyCertificate = builder.mongoSSLVerifyCertificate;
 		this.dropCollection = builder.dropCollection;
 		this.excludeFields = builder.excludeFields;
+		this.excludeFilter = FieldFilter.exclude(builder.excludeFields);
+		this.includeFields = builder.includeFields;
+		this.includeFilter = FieldFilter.include(builder.includeFields);
 		this.includeCollection = builder.includeCollection;
 		this.initialTimestamp = builder.initialTimestamp;
+		this.initialImportParallelism = builder.initialImportParallelism;
+		this.skipInitialImport = builder.skipInitialImport;
+		this.updateStrategy = builder.updateStrategy;
+		this.refetchBatchSize = builder.refetchBatchSize;
+		this.refetchBatchTimeout = builder.refetchBatchTimeout;
+		this.lazyDecoding = builder.lazyDecoding;
 		this.script = builder.script;
 		this.scriptType = builder.scriptType;
+		this.scriptThreads = builder.scriptThreads;
+		this.scriptMode = builder.scriptMode;
 		// index
 		this.indexName = builder.indexName;
 		this.typeName = builder.typeName;
 		this.bulkSize = builder.bulkSize;
 		this.bulkTimeout = builder.bulkTimeout;
+		this.bulkSizeBytes = builder.bulkSizeBytes;
+		this.sourceFormat = builder.sourceFormat;
+		this.statsInterval = builder.statsInterval;
+		this.statsIndexName = builder.statsIndexName;
+		this.statsTypeName = builder.statsTypeName;
+		this.traceSampleRate = builder.traceSampleRate;
+		this.adaptiveBulk = builder.adaptiveBulk;
+		this.minBulkSize = builder.minBulkSize;
+		this.maxBulkSize = builder.maxBulkSize;
+		this.minBulkTimeout = builder.minBulkTimeout;
+		this.maxBulkTimeout = builder.maxBulkTimeout;
+		this.targetBulkLatency = builder.targetBulkLatency;
+		this.concurrentBulkRequests = builder.concurrentBulkRequests;
+		this.indexerThreads = builder.indexerThreads;
 		this.throttleSize = builder.throttleSize;
 
 	}
@@ -572,6 +930,28 @@ public class MongoDBRiverDefinition {
 		return excludeFields;
 	}
 
+	/*
+	 * Exclude fields compiled once for all the documents.
+	 */
+	public FieldFilter getExcludeFilter() {
+		return excludeFilter;
+	}
+
+	/*
+	 * Only these fields (and "_id") are indexed. Cannot be used with the
+	 * exclude fields.
+	 */
+	public Set<String> getIncludeFields() {
+		return includeFields;
+	}
+
+	/*
+	 * Include fields if set, otherwise exclude fields.
+	 */
+	public FieldFilter getFieldFilter() {
+		return includeFields != null ? includeFilter : excludeFilter;
+	}
+
 	public String getIncludeCollection() {
 		return includeCollection;
 	}
@@ -580,6 +960,34 @@ public class MongoDBRiverDefinition {
 		return initialTimestamp;
 	}
 
+	public int getInitialImportParallelism() {
+		return initialImportParallelism;
+	}
+
+	public boolean isSkipInitialImport() {
+		return skipInitialImport;
+	}
+
+	public String getUpdateStrategy() {
+		return updateStrategy;
+	}
+
+	public int getRefetchBatchSize() {
+		return refetchBatchSize;
+	}
+
+	public TimeValue getRefetchBatchTimeout() {
+		return refetchBatchTimeout;
+	}
+
+	/*
+	 * Decode the oplog entries lazily: "o" and "o2" are only decoded for the
+	 * entries which are indexed.
+	 */
+	public boolean isLazyDecoding() {
+		return lazyDecoding;
+	}
+
 	public String getScript() {
 		return script;
 	}
@@ -588,6 +996,31 @@ public class MongoDBRiverDefinition {
 		return scriptType;
 	}
 
+	/*
+	 * Number of threads running the script. With more than one thread the
+	 * documents of a bulk are transformed in parallel.
+	 */
+	public int getScriptThreads() {
+		return scriptThreads;
+	}
+
+	/*
+	 * "document" (default): the script runs for each document with its
+	 * context in "ctx".
+	 * "batch": the script runs once for the documents of a bulk with the list
+	 * of their contexts in "ctxs". It updates the contexts or returns a list
+	 * with a context for each document, in the same order. The contexts have
+	 * the same fields as in document mode (document, operation, id, _index,
+	 * _type, _parent, _routing, ignore, deleted).
+	 */
+	public String getScriptMode() {
+		return scriptMode;
+	}
+
+	public boolean isBatchScript() {
+		return SCRIPT_MODE_BATCH.equals(scriptMode);
+	}
+
 	public String getIndexName() {
 		return indexName;
 	}
@@ -604,6 +1037,81 @@ public class MongoDBRiverDefinition {
 		return bulkTimeout;
 	}
 
+	/*
+	 * A negative value disables the limit.
+	 */
+	public ByteSizeValue getBulkSizeBytes() {
+		return bulkSizeBytes;
+	}
+
+	/*
+	 * XContent type of the source of the index requests: JSON (default) or
+	 * SMILE.
+	 */
+	public XContentType getSourceFormat() {
+		return sourceFormat;
+	}
+
+	/*
+	 * Interval of the statistics written to the river index and to the
+	 * stats index if set.
+	 */
+	public TimeValue getStatsInterval() {
+		return statsInterval;
+	}
+
+	/*
+	 * Index where a statistics document is added at each interval, null if
+	 * not set.
+	 */
+	public String getStatsIndexName() {
+		return statsIndexName;
+	}
+
+	public String getStatsTypeName() {
+		return statsTypeName;
+	}
+
+	/*
+	 * Fraction of the oplog entries traced through the stages of the river,
+	 * 0 (default) disables tracing.
+	 */
+	public double getTraceSampleRate() {
+		return traceSampleRate;
+	}
+
+	public boolean isAdaptiveBulk() {
+		return adaptiveBulk;
+	}
+
+	public int getMinBulkSize() {
+		return minBulkSize;
+	}
+
+	public int getMaxBulkSize() {
+		return maxBulkSize;
+	}
+
+	public TimeValue getMinBulkTimeout() {
+		return minBulkTimeout;
+	}
+
+	public TimeValue getMaxBulkTimeout() {
+		return maxBulkTimeout;
+	}
+
+	public TimeValue getTargetBulkLatency() {
+		return targetBulkLatency;
+	}
+
+	public int getConcurrentBulkRequests() {
+		return concurrentBulkRequests;
+	}
+
+	public int getIndexerThreads() {
+		return indexerThreads;
+	}
+
 	public int getThrottleSize() {
 		return throttleSize;
 	}
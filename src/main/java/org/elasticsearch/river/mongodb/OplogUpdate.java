@@ -0,0 +1,167 @@
+package org.elasticsearch.river.mongodb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.river.mongodb.util.FieldFilter;
+import org.elasticsearch.river.mongodb.util.MongoDBHelper;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/*
+ * Interpretation of the "o" object of an update oplog entry. It is either a
+ * full document replacement or a set of $set / $unset modifiers (the oplog
+ * stores $inc, $push... as $set of the resulting value).
+ */
+public class OplogUpdate {
+
+	public final static String SET_OPERATOR = "$set";
+	public final static String UNSET_OPERATOR = "$unset";
+
+	private final boolean replacement;
+	private final DBObject document;
+	private final List<String> unsetFields;
+
+	private OplogUpdate(boolean replacement, DBObject document,
+			List<String> unsetFields) {
+		this.replacement = replacement;
+		this.document = document;
+		this.unsetFields = unsetFields;
+	}
+
+	/*
+	 * Full document for a replacement, fields to merge for a partial update.
+	 * Always contains the _id of the updated document.
+	 */
+	public DBObject getDocument() {
+		return document;
+	}
+
+	public boolean isReplacement() {
+		return replacement;
+	}
+
+	public List<String> getUnsetFields() {
+		return unsetFields;
+	}
+
+	public boolean isEmpty() {
+		return !replacement && unsetFields.isEmpty()
+				&& document.keySet().size() == 1;
+	}
+
+	/**
+	 * Returns null if the update cannot be applied without fetching the
+	 * document: other operators, positional or array index paths, nested
+	 * $unset, $set combined with $unset or $set of a sub-document (a
+	 * partial update merges it with the indexed one instead of replacing
+	 * it). The field filter (exclude or
+	 * include fields) is optional.
+	 */
+	public static OplogUpdate parse(DBObject criteria, DBObject object,
+			FieldFilter fieldFilter) {
+		if (criteria == null || object == null
+				|| criteria.get(MongoDBRiver.MONGODB_ID_FIELD) == null) {
+			return null;
+		}
+		Object id = criteria.get(MongoDBRiver.MONGODB_ID_FIELD);
+		boolean modifiers = false;
+		for (String key : object.keySet()) {
+			if (key.startsWith("$")) {
+				modifiers = true;
+				if (!SET_OPERATOR.equals(key) && !UNSET_OPERATOR.equals(key)) {
+					return null;
+				}
+			}
+		}
+
+		if (!modifiers) {
+			DBObject document = filter(fieldFilter, object);
+			if (!document.containsField(MongoDBRiver.MONGODB_ID_FIELD)) {
+				document.put(MongoDBRiver.MONGODB_ID_FIELD, id);
+			}
+			return new OplogUpdate(true, document, Collections
+					.<String> emptyList());
+		}
+
+		Object set = object.get(SET_OPERATOR);
+		Object unset = object.get(UNSET_OPERATOR);
+		if (set != null && unset != null) {
+			return null;
+		}
+
+		List<String> unsetFields = new ArrayList<String>();
+		if (unset instanceof DBObject) {
+			for (String field : ((DBObject) unset).keySet()) {
+				if (field.contains(".")) {
+					return null;
+				}
+				unsetFields.add(field);
+			}
+		}
+
+		DBObject document = new BasicDBObject();
+		if (set instanceof DBObject) {
+			for (Map.Entry<String, Object> field : MongoDBHelper.asMap(
+					(DBObject) set).entrySet()) {
+				if (isSubDocument(field.getValue())) {
+					return null;
+				}
+				if (!put(document, field.getKey().split("\\."),
+						field.getValue())) {
+					return null;
+				}
+			}
+			document = filter(fieldFilter, document);
+		}
+		document.put(MongoDBRiver.MONGODB_ID_FIELD, id);
+		return new OplogUpdate(false, document, unsetFields);
+	}
+
+	private static DBObject filter(FieldFilter fieldFilter, DBObject object) {
+		return fieldFilter == null ? object : fieldFilter.apply(object);
+	}
+
+	private static boolean put(DBObject document, String[] path, Object value) {
+		DBObject current = document;
+		for (int i = 0; i < path.length; i++) {
+			String name = path[i];
+			if (name.isEmpty() || isArrayIndex(name)) {
+				return false;
+			}
+			if (i == path.length - 1) {
+				current.put(name, value);
+			} else {
+				Object child = current.get(name);
+				if (child == null) {
+					child = new BasicDBObject();
+					current.put(name, child);
+				} else if (!(child instanceof DBObject)) {
+					return false;
+				}
+				current = (DBObject) child;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Arrays are replaced by a partial update, objects are merged.
+	 */
+	private static boolean isSubDocument(Object value) {
+		return (value instanceof Map || value instanceof DBObject)
+				&& !(value instanceof List);
+	}
+
+	private static boolean isArrayIndex(String name) {
+		for (int i = 0; i < name.length(); i++) {
+			if (!Character.isDigit(name.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
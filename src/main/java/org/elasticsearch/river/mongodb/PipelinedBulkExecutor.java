@@ -0,0 +1,231 @@
+package org.elasticsearch.river.mongodb;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Set;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.ESLoggerFactory;
+
+/*
+ * Executes bulk requests asynchronously with a limited number of requests in
+ * flight. A bulk touching documents of a bulk still in flight waits for it.
+ * The callback of a bulk is run once it and all the bulks executed before it
+ * have completed, in execution order. A bulk which failed as a whole (no
+ * response) runs its failure callback instead: its documents have not been
+ * indexed.
+ */
+public class PipelinedBulkExecutor {
+
+	private final ESLogger logger = ESLoggerFactory.getLogger(this.getClass()
+			.getName());
+	private final Client client;
+	private final int maxInFlight;
+	private final ActionListener<BulkResponse> responseListener;
+	private final StageStats bulkStage;
+	private final LinkedList<Bulk> pending = new LinkedList<Bulk>();
+	private int inFlight = 0;
+
+	private static class Bulk {
+		private final Set<?> keys;
+		private final ActionListener<BulkResponse> listener;
+		private final int actions;
+		private long start;
+		private boolean done = false;
+		private BulkResponse response;
+		private Throwable failure;
+
+		private Bulk(Set<?> keys, ActionListener<BulkResponse> listener,
+				int actions) {
+			this.keys = keys;
+			this.listener = listener;
+			this.actions = actions;
+		}
+	}
+
+	public PipelinedBulkExecutor(final Client client, final int maxInFlight) {
+		this(client, maxInFlight, null);
+	}
+
+	/*
+	 * The response listener is notified of each response as it arrives.
+	 */
+	public PipelinedBulkExecutor(final Client client, final int maxInFlight,
+			final ActionListener<BulkResponse> responseListener) {
+		this(client, maxInFlight, null, responseListener);
+	}
+
+	/*
+	 * The time from the execution of each bulk to its response is recorded
+	 * in the bulk stage.
+	 */
+	public PipelinedBulkExecutor(final Client client, final int maxInFlight,
+			final StageStats bulkStage,
+			final ActionListener<BulkResponse> responseListener) {
+		this.client = client;
+		this.maxInFlight = Math.max(1, maxInFlight);
+		this.bulkStage = bulkStage;
+		this.responseListener = responseListener;
+	}
+
+	/**
+	 * Blocks while the maximum number of bulks are in flight or while a bulk
+	 * in flight contains one of the keys.
+	 */
+	public void execute(final BulkRequest request, final Set<?> keys,
+			final Runnable onAcknowledged) throws InterruptedException {
+		execute(request, keys, onAcknowledged, null);
+	}
+
+	/**
+	 * onFailed is run instead of onAcknowledged when the bulk fails without
+	 * response (no node available, rejected...).
+	 */
+	public void execute(final BulkRequest request, final Set<?> keys,
+			final Runnable onAcknowledged, final Runnable onFailed)
+			throws InterruptedException {
+		execute(request, keys, new ActionListener<BulkResponse>() {
+			@Override
+			public void onResponse(BulkResponse response) {
+				if (onAcknowledged != null) {
+					onAcknowledged.run();
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				if (onFailed != null) {
+					onFailed.run();
+				}
+			}
+		});
+	}
+
+	/**
+	 * The listener is notified in execution order, with the response of the
+	 * bulk (which can contain failed items) or with the failure of the whole
+	 * bulk.
+	 */
+	public void execute(final BulkRequest request, final Set<?> keys,
+			final ActionListener<BulkResponse> completionListener)
+			throws InterruptedException {
+		final Bulk bulk = new Bulk(keys != null ? keys : Collections
+				.emptySet(), completionListener, request.numberOfActions());
+		synchronized (this) {
+			while (inFlight >= maxInFlight || conflicts(bulk.keys)) {
+				wait();
+			}
+			pending.add(bulk);
+			inFlight++;
+		}
+		if (request.numberOfActions() == 0) {
+			release(bulk, new BulkResponse(new BulkItemResponse[0], 0), null);
+			return;
+		}
+		ActionListener<BulkResponse> listener = new ActionListener<BulkResponse>() {
+			@Override
+			public void onResponse(BulkResponse response) {
+				try {
+					if (response.hasFailures()) {
+						// TODO write to exception queue?
+						logger.warn("failed to execute"
+								+ response.buildFailureMessage());
+					}
+					if (responseListener != null) {
+						responseListener.onResponse(response);
+					}
+				} finally {
+					release(bulk, response, null);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				try {
+					logger.warn("failed to execute bulk", e);
+					if (responseListener != null) {
+						responseListener.onFailure(e);
+					}
+				} finally {
+					release(bulk, null, e);
+				}
+			}
+		};
+		bulk.start = System.nanoTime();
+		try {
+			executeBulk(request, listener);
+		} catch (Exception e) {
+			listener.onFailure(e);
+		}
+	}
+
+	/**
+	 * Waits until all the bulks have completed.
+	 */
+	public synchronized void waitForAll() throws InterruptedException {
+		while (!pending.isEmpty()) {
+			wait();
+		}
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	protected void executeBulk(final BulkRequest request,
+			final ActionListener<BulkResponse> listener) {
+		client.bulk(request, listener);
+	}
+
+	private boolean conflicts(final Set<?> keys) {
+		if (keys.isEmpty()) {
+			return false;
+		}
+		for (Bulk bulk : pending) {
+			if (!bulk.done && !Collections.disjoint(bulk.keys, keys)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Frees the slot and the keys of the bulk, then runs the callbacks of
+	 * the completed bulks at the head of the pipeline.
+	 */
+	private synchronized void release(final Bulk bulk,
+			final BulkResponse response, final Throwable failure) {
+		if (bulkStage != null && bulk.actions > 0) {
+			bulkStage.record(System.nanoTime() - bulk.start, bulk.actions);
+		}
+		bulk.done = true;
+		bulk.response = response;
+		bulk.failure = failure;
+		inFlight--;
+		complete();
+	}
+
+	private void complete() {
+		while (!pending.isEmpty() && pending.getFirst().done) {
+			Bulk completed = pending.removeFirst();
+			if (completed.listener == null) {
+				continue;
+			}
+			try {
+				if (completed.failure != null) {
+					completed.listener.onFailure(completed.failure);
+				} else {
+					completed.listener.onResponse(completed.response);
+				}
+			} catch (Exception e) {
+				logger.warn("failed to process completed bulk", e);
+			}
+		}
+		notifyAll();
+	}
+}
@@ -0,0 +1,226 @@
+package org.elasticsearch.river.mongodb;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.bson.types.BSONTimestamp;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/*
+ * Statistics of a river, sent by the status thread to the StatsReporters
+ * and returned by GET /_river/mongodb/{river}/_stats.
+ * - lag: seconds between the newest oplog entry of the river (read by the
+ * status thread, or the last entry read by the slurper if newer) and the
+ * last timestamp saved once indexed (_last_ts)
+ * - documents indexed and documents per second by operation
+ * - time and documents per second of each stage (slurp, script, serialize,
+ * bulk)
+ * - bulk latency histogram (milliseconds), failed bulks and documents
+ * - percentiles of the sampled traces if tracing is enabled
+ */
+public class RiverStats {
+
+	public final static String LAST_OPLOG_TIMESTAMP_FIELD = "last_oplog_timestamp";
+	public final static String LAST_INDEXED_TIMESTAMP_FIELD = "last_indexed_timestamp";
+	public final static String OPLOG_HEAD_TIMESTAMP_FIELD = "oplog_head_timestamp";
+	public final static String LAG_FIELD = "lag_seconds";
+	public final static String QUEUE_DEPTH_FIELD = "queue_depth";
+	public final static String DOCUMENTS_FIELD = "documents";
+	public final static String STAGES_FIELD = "stages";
+	public final static String BULK_FIELD = "bulk";
+	public final static String TRACE_FIELD = "trace";
+
+	// oplog entry processed by the slurper (decoding, filter, enqueue)
+	public final static String SLURP_STAGE = "slurp";
+	public final static String SCRIPT_STAGE = "script";
+	// document source built by the indexer
+	public final static String SERIALIZE_STAGE = "serialize";
+	// bulk request sent until its response
+	public final static String BULK_STAGE = "bulk";
+
+	// upper bounds of the bulk latency buckets in milliseconds
+	public final static long[] BULK_LATENCY_BUCKETS = { 10, 50, 100, 250, 500,
+			1000, 5000 };
+
+	private final AtomicLong inserted = new AtomicLong();
+	private final AtomicLong updated = new AtomicLong();
+	private final AtomicLong deleted = new AtomicLong();
+	private final RollingRate insertedRate = new RollingRate();
+	private final RollingRate updatedRate = new RollingRate();
+	private final RollingRate deletedRate = new RollingRate();
+	private final Map<String, StageStats> stages = new LinkedHashMap<String, StageStats>();
+	private final AtomicLong bulks = new AtomicLong();
+	private final AtomicLong failedBulks = new AtomicLong();
+	private final AtomicLong failedDocuments = new AtomicLong();
+	private final AtomicLongArray bulkLatency = new AtomicLongArray(
+			BULK_LATENCY_BUCKETS.length + 1);
+	private volatile BSONTimestamp lastOplogTimestamp;
+	private volatile BSONTimestamp lastIndexedTimestamp;
+	private volatile BSONTimestamp oplogHeadTimestamp;
+	private final Tracer tracer;
+
+	public RiverStats() {
+		this(null);
+	}
+
+	public RiverStats(Tracer tracer) {
+		this.tracer = tracer;
+		for (String stage : new String[] { SLURP_STAGE, SCRIPT_STAGE,
+				SERIALIZE_STAGE, BULK_STAGE }) {
+			stages.put(stage, new StageStats());
+		}
+	}
+
+	/*
+	 * Null if tracing is disabled.
+	 */
+	public Tracer getTracer() {
+		return tracer;
+	}
+
+	public StageStats getStage(String stage) {
+		return stages.get(stage);
+	}
+
+	public void documentIndexed(String operation) {
+		if (MongoDBRiver.OPLOG_INSERT_OPERATION.equals(operation)) {
+			inserted.incrementAndGet();
+			insertedRate.add(1);
+		} else if (MongoDBRiver.OPLOG_UPDATE_OPERATION.equals(operation)) {
+			updated.incrementAndGet();
+			updatedRate.add(1);
+		} else if (MongoDBRiver.OPLOG_DELETE_OPERATION.equals(operation)) {
+			deleted.incrementAndGet();
+			deletedRate.add(1);
+		}
+	}
+
+	public void bulkExecuted(BulkResponse response) {
+		bulks.incrementAndGet();
+		bulkLatency.incrementAndGet(bucket(response.getTookInMillis()));
+		if (response.hasFailures()) {
+			for (BulkItemResponse item : response.getItems()) {
+				if (item.isFailed()) {
+					failedDocuments.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	public void bulkFailed() {
+		bulks.incrementAndGet();
+		failedBulks.incrementAndGet();
+	}
+
+	public void setLastOplogTimestamp(BSONTimestamp timestamp) {
+		if (timestamp != null) {
+			lastOplogTimestamp = timestamp;
+		}
+	}
+
+	public void setLastIndexedTimestamp(BSONTimestamp timestamp) {
+		if (timestamp != null) {
+			lastIndexedTimestamp = timestamp;
+		}
+	}
+
+	public void setOplogHeadTimestamp(BSONTimestamp timestamp) {
+		if (timestamp != null) {
+			oplogHeadTimestamp = timestamp;
+		}
+	}
+
+	public BSONTimestamp getLastIndexedTimestamp() {
+		return lastIndexedTimestamp;
+	}
+
+	/*
+	 * -1 until an oplog entry has been read and indexed.
+	 */
+	public long getLagSeconds() {
+		BSONTimestamp read = lastOplogTimestamp;
+		BSONTimestamp head = oplogHeadTimestamp;
+		BSONTimestamp indexed = lastIndexedTimestamp;
+		if (read == null || indexed == null) {
+			return -1;
+		}
+		long newest = head == null ? read.getTime() : Math.max(
+				read.getTime(), head.getTime());
+		return Math.max(0, newest - indexed.getTime());
+	}
+
+	public long getBulkLatencyCount(int bucket) {
+		return bulkLatency.get(bucket);
+	}
+
+	public long getFailedDocuments() {
+		return failedDocuments.get();
+	}
+
+	/*
+	 * Writes the fields of the statistics in the current object of the
+	 * builder.
+	 */
+	public XContentBuilder toXContent(XContentBuilder builder, int queueDepth)
+			throws IOException {
+		if (lastOplogTimestamp != null) {
+			builder.field(LAST_OPLOG_TIMESTAMP_FIELD,
+					lastOplogTimestamp.getTime());
+		}
+		if (lastIndexedTimestamp != null) {
+			builder.field(LAST_INDEXED_TIMESTAMP_FIELD,
+					lastIndexedTimestamp.getTime());
+		}
+		if (oplogHeadTimestamp != null) {
+			builder.field(OPLOG_HEAD_TIMESTAMP_FIELD,
+					oplogHeadTimestamp.getTime());
+		}
+		builder.field(LAG_FIELD, getLagSeconds());
+		builder.field(QUEUE_DEPTH_FIELD, queueDepth);
+		builder.startObject(DOCUMENTS_FIELD);
+		builder.field("inserted", inserted.get());
+		builder.field("updated", updated.get());
+		builder.field("deleted", deleted.get());
+		builder.field("inserted_per_second", insertedRate.getRatePerSecond());
+		builder.field("updated_per_second", updatedRate.getRatePerSecond());
+		builder.field("deleted_per_second", deletedRate.getRatePerSecond());
+		builder.endObject();
+		builder.startObject(STAGES_FIELD);
+		for (Map.Entry<String, StageStats> stage : stages.entrySet()) {
+			builder.field(stage.getKey());
+			stage.getValue().toXContent(builder);
+		}
+		builder.endObject();
+		builder.startObject(BULK_FIELD);
+		builder.field("count", bulks.get());
+		builder.field("failed", failedBulks.get());
+		builder.field("failed_documents", failedDocuments.get());
+		builder.startObject("latency_ms");
+		for (int i = 0; i < BULK_LATENCY_BUCKETS.length; i++) {
+			builder.field("le_" + BULK_LATENCY_BUCKETS[i], bulkLatency.get(i));
+		}
+		builder.field("gt_" + BULK_LATENCY_BUCKETS[BULK_LATENCY_BUCKETS.length - 1],
+				bulkLatency.get(BULK_LATENCY_BUCKETS.length));
+		builder.endObject();
+		builder.endObject();
+		if (tracer != null) {
+			builder.field(TRACE_FIELD);
+			tracer.toXContent(builder);
+		}
+		return builder;
+	}
+
+	private static int bucket(long millis) {
+		for (int i = 0; i < BULK_LATENCY_BUCKETS.length; i++) {
+			if (millis <= BULK_LATENCY_BUCKETS[i]) {
+				return i;
+			}
+		}
+		return BULK_LATENCY_BUCKETS.length;
+	}
+}
@@ -0,0 +1,64 @@
+package org.elasticsearch.river.mongodb;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Rate per second over a rolling window, counted in one second buckets.
+ */
+public class RollingRate {
+
+	public final static int DEFAULT_WINDOW_SECONDS = 60;
+
+	private final long[] seconds;
+	private final long[] counts;
+	private final long startSecond;
+
+	public RollingRate() {
+		this(DEFAULT_WINDOW_SECONDS);
+	}
+
+	public RollingRate(int windowSeconds) {
+		this.seconds = new long[Math.max(1, windowSeconds)];
+		this.counts = new long[seconds.length];
+		this.startSecond = currentSecond();
+		for (int i = 0; i < seconds.length; i++) {
+			seconds[i] = Long.MIN_VALUE;
+		}
+	}
+
+	public synchronized void add(long count) {
+		long second = currentSecond();
+		// System.nanoTime() can be negative
+		int bucket = (int) (((second % seconds.length) + seconds.length) % seconds.length);
+		if (seconds[bucket] != second) {
+			seconds[bucket] = second;
+			counts[bucket] = 0;
+		}
+		counts[bucket] += count;
+	}
+
+	/*
+	 * Count of the window divided by its length, or by the time elapsed
+	 * since the creation during the first window.
+	 */
+	public synchronized double getRatePerSecond() {
+		long second = currentSecond();
+		long total = 0;
+		for (int i = 0; i < seconds.length; i++) {
+			if (seconds[i] > second - seconds.length) {
+				total += counts[i];
+			}
+		}
+		long window = Math.min(seconds.length,
+				Math.max(1, second - startSecond + 1));
+		return (double) total / window;
+	}
+
+	protected long nanoTime() {
+		return System.nanoTime();
+	}
+
+	private long currentSecond() {
+		return TimeUnit.NANOSECONDS.toSeconds(nanoTime());
+	}
+}
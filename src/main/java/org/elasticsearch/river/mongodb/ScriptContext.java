@@ -0,0 +1,48 @@
+package org.elasticsearch.river.mongodb;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * "ctx" variable of the river script. The script reads document, operation
+ * and id and can set _index, _type, _parent, _routing, ignore or deleted.
+ * An indexer reuses the same instance for each document.
+ */
+public class ScriptContext extends HashMap<String, Object> {
+
+	private static final long serialVersionUID = 1L;
+
+	public final static String DOCUMENT_FIELD = "document";
+	public final static String OPERATION_FIELD = "operation";
+	public final static String ID_FIELD = "id";
+
+	public ScriptContext reset(final Map<String, Object> document,
+			final String operation, final String id) {
+		clear();
+		put(DOCUMENT_FIELD, document);
+		put(OPERATION_FIELD, operation);
+		if (id != null && !id.isEmpty()) {
+			put(ID_FIELD, id);
+		}
+		return this;
+	}
+
+	/*
+	 * Contexts returned by a batch script ("ctxs"): null unless it is a list
+	 * with a map for each document.
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<Map<String, Object>> batchContexts(final Object result,
+			final int documents) {
+		if (!(result instanceof List) || ((List<?>) result).size() != documents) {
+			return null;
+		}
+		for (Object ctx : (List<?>) result) {
+			if (!(ctx instanceof Map)) {
+				return null;
+			}
+		}
+		return (List<Map<String, Object>>) result;
+	}
+}
@@ -0,0 +1,71 @@
+package org.elasticsearch.river.mongodb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Threads running the script of the documents of a bulk in parallel. The
+ * tasks which cannot be run by the pool once it is closed are run by the
+ * calling thread, so the documents are never skipped.
+ */
+public class ScriptPool {
+
+	private final ExecutorService executor;
+
+	public ScriptPool(final int threads, final ThreadFactory threadFactory) {
+		this.executor = Executors.newFixedThreadPool(threads, threadFactory);
+	}
+
+	/**
+	 * Waits for the tasks and returns their futures in the order of the
+	 * tasks. A task which failed throws its ExecutionException from get().
+	 */
+	public <T> List<Future<T>> invokeAll(final List<? extends Callable<T>> tasks)
+			throws InterruptedException {
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		for (Callable<T> task : tasks) {
+			FutureTask<T> future = new FutureTask<T>(task);
+			try {
+				executor.execute(future);
+			} catch (RejectedExecutionException e) {
+				// the pool is closed with the river
+				future.run();
+			}
+			futures.add(future);
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				futures.get(i).get();
+			} catch (CancellationException e) {
+				// queued when the pool was closed, never started
+				FutureTask<T> future = new FutureTask<T>(tasks.get(i));
+				future.run();
+				futures.set(i, future);
+			} catch (ExecutionException e) {
+				// thrown again to the caller by get()
+			}
+		}
+		return futures;
+	}
+
+	/*
+	 * The tasks still queued are cancelled, the threads running a script are
+	 * interrupted.
+	 */
+	public void close() {
+		for (Runnable task : executor.shutdownNow()) {
+			if (task instanceof Future) {
+				((Future<?>) task).cancel(false);
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package org.elasticsearch.river.mongodb;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/*
+ * Time spent in a stage of the river (slurp, script, serialize, bulk),
+ * measured with System.nanoTime(), and documents processed per second over
+ * a rolling window.
+ */
+public class StageStats {
+
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong documents = new AtomicLong();
+	private final AtomicLong nanos = new AtomicLong();
+	private final RollingRate rate;
+
+	public StageStats() {
+		this(new RollingRate());
+	}
+
+	public StageStats(RollingRate rate) {
+		this.rate = rate;
+	}
+
+	/*
+	 * One execution of the stage for the documents.
+	 */
+	public void record(long nanos, int documents) {
+		this.count.incrementAndGet();
+		this.documents.addAndGet(documents);
+		this.nanos.addAndGet(nanos);
+		rate.add(documents);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getDocuments() {
+		return documents.get();
+	}
+
+	public long getTotalNanos() {
+		return nanos.get();
+	}
+
+	public double getDocumentsPerSecond() {
+		return rate.getRatePerSecond();
+	}
+
+	public XContentBuilder toXContent(XContentBuilder builder)
+			throws IOException {
+		long count = getCount();
+		long nanos = getTotalNanos();
+		builder.startObject();
+		builder.field("count", count);
+		builder.field("documents", getDocuments());
+		builder.field("time_ms", nanos / 1000000);
+		builder.field("average_ms", count == 0 ? 0 : nanos / 1e6 / count);
+		builder.field("documents_per_second", getDocumentsPerSecond());
+		builder.endObject();
+		return builder;
+	}
+}
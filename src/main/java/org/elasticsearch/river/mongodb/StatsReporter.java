@@ -0,0 +1,9 @@
+package org.elasticsearch.river.mongodb;
+
+/*
+ * Receives the statistics of the river at each statistics interval.
+ */
+public interface StatsReporter {
+
+	void report(RiverStats stats, int queueDepth) throws Exception;
+}
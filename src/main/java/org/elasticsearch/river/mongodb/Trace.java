@@ -0,0 +1,40 @@
+package org.elasticsearch.river.mongodb;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bson.types.BSONTimestamp;
+
+/*
+ * Time spent by a sampled oplog entry in each stage of the river. A mark
+ * adds the time since the previous mark to the stage.
+ */
+public class Trace {
+
+	private final BSONTimestamp oplogTimestamp;
+	private final Map<String, Long> stages = new LinkedHashMap<String, Long>();
+	private long last;
+
+	public Trace(BSONTimestamp oplogTimestamp, long start) {
+		this.oplogTimestamp = oplogTimestamp;
+		this.last = start;
+	}
+
+	/*
+	 * Only the documents of the traced entry carry the trace.
+	 */
+	public boolean isFor(BSONTimestamp timestamp) {
+		return oplogTimestamp != null && oplogTimestamp.equals(timestamp);
+	}
+
+	public synchronized void mark(String stage) {
+		long now = System.nanoTime();
+		Long nanos = stages.get(stage);
+		stages.put(stage, (nanos == null ? 0 : nanos) + now - last);
+		last = now;
+	}
+
+	public synchronized Map<String, Long> getStages() {
+		return new LinkedHashMap<String, Long>(stages);
+	}
+}
@@ -0,0 +1,146 @@
+package org.elasticsearch.river.mongodb;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.bson.types.BSONTimestamp;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/*
+ * Samples oplog entries to trace and keeps the latencies of the last traces
+ * for each stage to compute percentiles:
+ * - cursor: wait for the entry on the oplog cursor
+ * - slurp: entry processed by the slurper until it is queued
+ * - refetch: query fetching the updated documents (each query, not sampled)
+ * - queue: wait in the queue of the indexer
+ * - script, serialize: transformation and source of the document
+ * - bulk: wait for the bulk request, then until its response
+ * - total: sum of the stages of a trace
+ */
+public class Tracer {
+
+	public final static String CURSOR_STAGE = "cursor";
+	public final static String SLURP_STAGE = RiverStats.SLURP_STAGE;
+	public final static String REFETCH_STAGE = "refetch";
+	public final static String QUEUE_STAGE = "queue";
+	public final static String SCRIPT_STAGE = RiverStats.SCRIPT_STAGE;
+	public final static String SERIALIZE_STAGE = RiverStats.SERIALIZE_STAGE;
+	public final static String BULK_STAGE = RiverStats.BULK_STAGE;
+	public final static String TOTAL_STAGE = "total";
+
+	public final static int DEFAULT_SAMPLES = 1024;
+	public final static double[] PERCENTILES = { 0.5, 0.9, 0.99 };
+
+	private final double sampleRate;
+	private final int samples;
+	private final Random random = new Random();
+	private final Map<String, Reservoir> stages = new LinkedHashMap<String, Reservoir>();
+
+	/*
+	 * Last latencies of a stage.
+	 */
+	private static class Reservoir {
+		private final long[] values;
+		private long count = 0;
+
+		private Reservoir(int size) {
+			values = new long[size];
+		}
+
+		private void add(long value) {
+			values[(int) (count++ % values.length)] = value;
+		}
+
+		private long[] sorted() {
+			long[] sorted = Arrays.copyOf(values,
+					(int) Math.min(count, values.length));
+			Arrays.sort(sorted);
+			return sorted;
+		}
+	}
+
+	public Tracer(double sampleRate) {
+		this(sampleRate, DEFAULT_SAMPLES);
+	}
+
+	public Tracer(double sampleRate, int samples) {
+		this.sampleRate = sampleRate;
+		this.samples = Math.max(1, samples);
+		for (String stage : new String[] { CURSOR_STAGE, SLURP_STAGE,
+				REFETCH_STAGE, QUEUE_STAGE, SCRIPT_STAGE, SERIALIZE_STAGE,
+				BULK_STAGE, TOTAL_STAGE }) {
+			stages.put(stage, new Reservoir(this.samples));
+		}
+	}
+
+	/*
+	 * A new trace started at start (System.nanoTime()) or null if the entry
+	 * is not sampled.
+	 */
+	public Trace sample(BSONTimestamp oplogTimestamp, long start) {
+		if (sampleRate <= 0 || random.nextDouble() >= sampleRate) {
+			return null;
+		}
+		return new Trace(oplogTimestamp, start);
+	}
+
+	public synchronized void record(String stage, long nanos) {
+		Reservoir reservoir = stages.get(stage);
+		if (reservoir != null) {
+			reservoir.add(nanos);
+		}
+	}
+
+	/*
+	 * Records the stages of a completed trace.
+	 */
+	public synchronized void record(Trace trace) {
+		long total = 0;
+		for (Map.Entry<String, Long> stage : trace.getStages().entrySet()) {
+			record(stage.getKey(), stage.getValue());
+			total += stage.getValue();
+		}
+		record(TOTAL_STAGE, total);
+	}
+
+	/*
+	 * Percentile (0 < percentile <= 1) of the latencies of the stage in
+	 * nanoseconds, -1 without trace.
+	 */
+	public synchronized long getPercentile(String stage, double percentile) {
+		long[] sorted = stages.get(stage).sorted();
+		return percentile(sorted, percentile);
+	}
+
+	public synchronized XContentBuilder toXContent(XContentBuilder builder)
+			throws IOException {
+		builder.startObject();
+		builder.field("sample_rate", sampleRate);
+		for (Map.Entry<String, Reservoir> stage : stages.entrySet()) {
+			long[] sorted = stage.getValue().sorted();
+			builder.startObject(stage.getKey());
+			builder.field("count", stage.getValue().count);
+			if (sorted.length > 0) {
+				for (double percentile : PERCENTILES) {
+					builder.field("p" + (int) (percentile * 100) + "_ms",
+							percentile(sorted, percentile) / 1e6);
+				}
+				builder.field("max_ms", sorted[sorted.length - 1] / 1e6);
+			}
+			builder.endObject();
+		}
+		builder.endObject();
+		return builder;
+	}
+
+	private static long percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return -1;
+		}
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+}
@@ -0,0 +1,91 @@
+package org.elasticsearch.river.mongodb.util;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.bson.BSONObject;
+import org.bson.types.Code;
+import org.bson.types.CodeWScope;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+
+/*
+ * Writes a document read from MongoDB (BSONObject or Map) to an
+ * XContentBuilder walking the BSON structure, without copying it to
+ * intermediate maps. The values are written as XContentBuilder.map() does
+ * so the mappings of the existing indices still apply:
+ * - ObjectId, Symbol, Pattern, BSONTimestamp, Binary, UUID...: string
+ * (toString())
+ * - Date: date
+ * - byte[]: base64 binary
+ * - Code: code string
+ */
+public abstract class BSONXContentSerializer {
+
+	public static XContentBuilder serialize(final Object document,
+			final XContentBuilder builder) throws IOException {
+		writeValue(builder, document);
+		return builder;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static void writeValue(final XContentBuilder builder,
+			final Object value) throws IOException {
+		if (value == null) {
+			builder.nullValue();
+		} else if (value instanceof String) {
+			builder.value((String) value);
+		} else if (value instanceof Number || value instanceof Boolean) {
+			builder.value(value);
+		} else if (value instanceof ObjectId) {
+			builder.value(value.toString());
+		} else if (value instanceof Date) {
+			builder.value((Date) value);
+		} else if (value instanceof Map) {
+			// BasicDBObject is a Map: no need to go through the BSON API
+			builder.startObject();
+			for (Map.Entry<String, Object> field : ((Map<String, Object>) value)
+					.entrySet()) {
+				builder.field(field.getKey());
+				writeValue(builder, field.getValue());
+			}
+			builder.endObject();
+		} else if (value instanceof Iterable) {
+			// BasicDBList
+			builder.startArray();
+			for (Object item : (Iterable<Object>) value) {
+				writeValue(builder, item);
+			}
+			builder.endArray();
+		} else if (value instanceof BSONObject) {
+			BSONObject object = (BSONObject) value;
+			builder.startObject();
+			for (String key : object.keySet()) {
+				builder.field(key);
+				writeValue(builder, object.get(key));
+			}
+			builder.endObject();
+		} else if (value instanceof Object[]) {
+			builder.startArray();
+			for (Object item : (Object[]) value) {
+				writeValue(builder, item);
+			}
+			builder.endArray();
+		} else if (value instanceof byte[]) {
+			builder.value((byte[]) value);
+		} else if (value instanceof CodeWScope) {
+			builder.value(((CodeWScope) value).getCode());
+		} else if (value instanceof Code) {
+			builder.value(((Code) value).getCode());
+		} else if (value instanceof Symbol) {
+			builder.value(((Symbol) value).getSymbol());
+		} else if (value instanceof Pattern) {
+			builder.value(((Pattern) value).pattern());
+		} else {
+			builder.value(value.toString());
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package org.elasticsearch.river.mongodb.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.mongodb.DBObject;
+
+/*
+ * Field paths ("a.b.c") compiled once to a trie and applied to documents:
+ * - exclude: the fields are removed from the document.
+ * - include: only the fields are kept ("_id" is always kept).
+ * The document is modified in place. Arrays are filtered element by element.
+ * The exclude walk follows the trie and does not allocate. The include walk
+ * has to visit the fields of the document to find the ones to remove: it
+ * allocates an iterator per object (and a copy of the field names for the
+ * DBObjects which are not a Map, as removing fields while iterating their
+ * keySet is not supported).
+ */
+public class FieldFilter {
+
+	private static final String ID_FIELD = "_id";
+
+	private final boolean include;
+	private final Node root = new Node();
+
+	private static class Node {
+		private final Map<String, Node> children = new HashMap<String, Node>();
+		private String[] names = new String[0];
+		private Node[] nodes = new Node[0];
+		private boolean leaf = false;
+
+		private Node add(String name) {
+			Node node = children.get(name);
+			if (node == null) {
+				node = new Node();
+				children.put(name, node);
+			}
+			return node;
+		}
+
+		/*
+		 * Arrays of the children to walk them without iterator.
+		 */
+		private void freeze() {
+			names = children.keySet().toArray(new String[children.size()]);
+			nodes = new Node[names.length];
+			for (int i = 0; i < names.length; i++) {
+				nodes[i] = children.get(names[i]);
+				nodes[i].freeze();
+			}
+		}
+	}
+
+	private FieldFilter(boolean include, Set<String> fields) {
+		this.include = include;
+		if (fields != null) {
+			for (String field : fields) {
+				Node node = root;
+				for (String name : field.split("\\.")) {
+					if (node.leaf) {
+						break;
+					}
+					node = node.add(name);
+				}
+				// "a" covers "a.b"
+				node.leaf = true;
+				node.children.clear();
+			}
+		}
+		root.freeze();
+	}
+
+	public static FieldFilter exclude(Set<String> fields) {
+		return new FieldFilter(false, fields);
+	}
+
+	public static FieldFilter include(Set<String> fields) {
+		return new FieldFilter(true, fields);
+	}
+
+	public boolean isInclude() {
+		return include;
+	}
+
+	public boolean isEmpty() {
+		return root.names.length == 0;
+	}
+
+	public DBObject apply(DBObject object) {
+		if (object == null || isEmpty()) {
+			return object;
+		}
+		if (include) {
+			include(object, root, true);
+		} else {
+			exclude(object, root);
+		}
+		return object;
+	}
+
+	private static void exclude(Object value, Node node) {
+		if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			for (int i = 0; i < list.size(); i++) {
+				exclude(list.get(i), node);
+			}
+		} else if (value instanceof DBObject) {
+			DBObject object = (DBObject) value;
+			for (int i = 0; i < node.names.length; i++) {
+				if (node.nodes[i].leaf) {
+					if (object.containsField(node.names[i])) {
+						object.removeField(node.names[i]);
+					}
+				} else {
+					exclude(object.get(node.names[i]), node.nodes[i]);
+				}
+			}
+		}
+	}
+
+	private static void include(Object value, Node node, boolean root) {
+		if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			for (int i = 0; i < list.size(); i++) {
+				include(list.get(i), node, false);
+			}
+		} else if (value instanceof DBObject) {
+			DBObject object = (DBObject) value;
+			if (object instanceof Map) {
+				Iterator<?> iterator = ((Map<?, ?>) object).entrySet()
+						.iterator();
+				while (iterator.hasNext()) {
+					Map.Entry<?, ?> field = (Map.Entry<?, ?>) iterator.next();
+					String name = (String) field.getKey();
+					if (!keep(object, name, node, root)) {
+						iterator.remove();
+					}
+				}
+			} else {
+				for (String name : object.keySet().toArray(
+						new String[object.keySet().size()])) {
+					if (!keep(object, name, node, root)) {
+						object.removeField(name);
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean keep(DBObject object, String name, Node node,
+			boolean root) {
+		if (root && ID_FIELD.equals(name)) {
+			return true;
+		}
+		Node child = node.children.get(name);
+		if (child == null) {
+			return false;
+		}
+		if (!child.leaf) {
+			include(object.get(name), child, false);
+		}
+		return true;
+	}
+}
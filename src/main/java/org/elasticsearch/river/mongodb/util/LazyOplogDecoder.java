@@ -0,0 +1,68 @@
+package org.elasticsearch.river.mongodb.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.bson.LazyBSONCallback;
+
+import com.mongodb.DBCallback;
+import com.mongodb.DBCollection;
+import com.mongodb.DBDecoder;
+import com.mongodb.DBDecoderFactory;
+import com.mongodb.DBObject;
+import com.mongodb.DBRef;
+import com.mongodb.DefaultDBDecoder;
+import com.mongodb.LazyDBCallback;
+import com.mongodb.LazyDBDecoder;
+import com.mongodb.LazyDBObject;
+import com.mongodb.MongoException;
+
+/*
+ * Lazy decoder of the oplog entries. The objects of an entry are decoded
+ * from the bytes read by the cursor, without copying them first.
+ */
+public class LazyOplogDecoder extends LazyDBDecoder {
+
+	public final static DBDecoderFactory FACTORY = new DBDecoderFactory() {
+		@Override
+		public DBDecoder create() {
+			return new LazyOplogDecoder();
+		}
+	};
+
+	@Override
+	public DBCallback getDBCallback(DBCollection collection) {
+		return new LazyDBCallback(collection) {
+			@Override
+			public Object createObject(byte[] data, int offset) {
+				Object object = super.createObject(data, offset);
+				if (object instanceof DBRef) {
+					return object;
+				}
+				return new DecodableObject(data, offset, this);
+			}
+		};
+	}
+
+	public static class DecodableObject extends LazyDBObject {
+
+		private DecodableObject(byte[] data, int offset,
+				LazyBSONCallback callback) {
+			super(data, offset, callback);
+		}
+
+		/*
+		 * BasicDBObject which can be modified.
+		 */
+		public DBObject decode() {
+			try {
+				return DefaultDBDecoder.FACTORY.create().decode(
+						new ByteArrayInputStream(_input.array(),
+								_doc_start_offset, getBSONSize()),
+						(DBCollection) null);
+			} catch (IOException e) {
+				throw new MongoException("Cannot decode object", e);
+			}
+		}
+	}
+}
@@ -22,15 +22,18 @@ package org.elasticsearch.river.mongodb.util;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
+import org.bson.LazyBSONObject;
 import org.elasticsearch.common.Base64;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 
+import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import com.mongodb.DefaultDBDecoder;
+import com.mongodb.MongoException;
 import com.mongodb.gridfs.GridFSDBFile;
 
 /*
@@ -40,8 +43,11 @@ public abstract class MongoDBHelper {
 
 	public static XContentBuilder serialize(GridFSDBFile file)
 			throws IOException {
+		return serialize(file, XContentFactory.jsonBuilder());
+	}
 
-		XContentBuilder builder = XContentFactory.jsonBuilder();
+	public static XContentBuilder serialize(GridFSDBFile file,
+			XContentBuilder builder) throws IOException {
 
 		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
 
@@ -77,7 +83,8 @@ public abstract class MongoDBHelper {
 		DBObject metadata = file.getMetaData();
 		if (metadata != null) {
 			for (String key : metadata.keySet()) {
-				builder.field(key, metadata.get(key));
+				builder.field(key);
+				BSONXContentSerializer.writeValue(builder, metadata.get(key));
 			}
 		}
 		builder.endObject();
@@ -86,32 +93,50 @@ public abstract class MongoDBHelper {
 		return builder;
 	}
 
+	/*
+	 * Compiles the fields for each call: use a FieldFilter to filter several
+	 * documents.
+	 */
 	public static DBObject applyExcludeFields(DBObject bsonObject,
 			Set<String> excludeFields) {
 		if (excludeFields == null) {
 			return bsonObject;
 		}
+		return FieldFilter.exclude(excludeFields).apply(bsonObject);
+	}
 
-		DBObject filteredObject = bsonObject;
-		for (String field : excludeFields) {
-			if (field.contains(".")) {
-				String rootObject = field.substring(0, field.indexOf("."));
-				String childObject = field.substring(field.indexOf(".") + 1);
-				if (filteredObject.containsField(rootObject)) {
-					Object object = filteredObject.get(rootObject);
-					if (object instanceof DBObject) {
-						DBObject object2 = (DBObject) object;
-						object2 = applyExcludeFields(object2,
-								new HashSet<String>(Arrays.asList(childObject)));
-					}
-				}
-			} else {
-				if (filteredObject.containsField(field)) {
-					filteredObject.removeField(field);
-				}
-			}
+	/*
+	 * Decodes an object read with LazyOplogDecoder (or LazyDBDecoder) to a
+	 * BasicDBObject which can be modified. Other objects are returned as is.
+	 */
+	public static DBObject decode(Object object) {
+		if (object instanceof LazyOplogDecoder.DecodableObject) {
+			return ((LazyOplogDecoder.DecodableObject) object).decode();
+		}
+		if (!(object instanceof LazyBSONObject)) {
+			return (DBObject) object;
+		}
+		LazyBSONObject lazyObject = (LazyBSONObject) object;
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(
+				lazyObject.getBSONSize());
+		try {
+			lazyObject.pipe(buffer);
+		} catch (IOException e) {
+			throw new MongoException("Cannot decode object", e);
+		}
+		return DefaultDBDecoder.FACTORY.create().decode(buffer.toByteArray(),
+				(DBCollection) null);
+	}
+
+	/*
+	 * BasicDBObject is already a Map: avoid the copy made by toMap().
+	 */
+	@SuppressWarnings("unchecked")
+	public static Map<String, Object> asMap(DBObject object) {
+		if (object instanceof Map) {
+			return (Map<String, Object>) object;
 		}
-		return filteredObject;
+		return object.toMap();
 	}
 
 	public static String getRiverVersion() {
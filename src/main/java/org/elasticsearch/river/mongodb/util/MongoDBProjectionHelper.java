@@ -0,0 +1,97 @@
+package org.elasticsearch.river.mongodb.util;
+
+import org.elasticsearch.river.mongodb.MongoDBRiver;
+import org.elasticsearch.river.mongodb.MongoDBRiverDefinition;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/*
+ * Projections of the queries run by the river, to only read the fields used.
+ */
+public abstract class MongoDBProjectionHelper {
+
+	/*
+	 * - GridFS: the file is fetched with its "_id", only "_id" is read from
+	 * "o" and "o2".
+	 * - Include fields with the refetch update strategy: "o" is limited to
+	 * "_id", the include fields and the drop command, "o2" is read for the
+	 * updates.
+	 * - Otherwise: "h", "v" and "fromMigrate" are not read (entries from
+	 * migration are excluded by the oplog filter). The exclude fields are
+	 * removed from "o". They are still removed from "$set" updates by
+	 * OplogUpdate as a projection cannot apply to the "$set" field.
+	 */
+	public static DBObject getOplogProjection(
+			MongoDBRiverDefinition definition) {
+		BasicDBObject projection = new BasicDBObject();
+		if (definition.isMongoGridFS()) {
+			projection.put(MongoDBRiver.OPLOG_TIMESTAMP, 1);
+			projection.put(MongoDBRiver.OPLOG_OPERATION, 1);
+			projection.put(MongoDBRiver.OPLOG_NAMESPACE, 1);
+			projection.put(MongoDBRiver.OPLOG_OBJECT + "."
+					+ MongoDBRiver.MONGODB_ID_FIELD, 1);
+			projection.put(MongoDBRiver.OPLOG_UPDATE + "."
+					+ MongoDBRiver.MONGODB_ID_FIELD, 1);
+		} else if (isOplogIncludeProjection(definition)) {
+			projection.put(MongoDBRiver.OPLOG_TIMESTAMP, 1);
+			projection.put(MongoDBRiver.OPLOG_OPERATION, 1);
+			projection.put(MongoDBRiver.OPLOG_NAMESPACE, 1);
+			projection.put(MongoDBRiver.OPLOG_UPDATE, 1);
+			projection.put(MongoDBRiver.OPLOG_OBJECT + "."
+					+ MongoDBRiver.MONGODB_ID_FIELD, 1);
+			projection.put(MongoDBRiver.OPLOG_OBJECT + "."
+					+ MongoDBRiver.OPLOG_DROP_COMMAND_OPERATION, 1);
+			for (String field : definition.getIncludeFields()) {
+				projection.put(MongoDBRiver.OPLOG_OBJECT + "." + field, 1);
+			}
+		} else {
+			projection.put(MongoDBRiver.OPLOG_HASH, 0);
+			projection.put(MongoDBRiver.OPLOG_VERSION, 0);
+			projection.put(MongoDBRiver.OPLOG_FROM_MIGRATE, 0);
+			if (definition.getIncludeFields() == null
+					&& definition.getExcludeFields() != null) {
+				for (String field : definition.getExcludeFields()) {
+					// "_id" is needed to index the document
+					if (!MongoDBRiver.MONGODB_ID_FIELD.equals(field)) {
+						projection.put(MongoDBRiver.OPLOG_OBJECT + "." + field,
+								0);
+					}
+				}
+			}
+		}
+		return projection;
+	}
+
+	/*
+	 * Projection of the queries on the collection (initial import and
+	 * documents fetched again after an update).
+	 */
+	public static DBObject getCollectionProjection(
+			MongoDBRiverDefinition definition) {
+		BasicDBObject projection = new BasicDBObject();
+		if (definition.getIncludeFields() != null) {
+			for (String field : definition.getIncludeFields()) {
+				projection.put(field, 1);
+			}
+		} else if (definition.getExcludeFields() != null) {
+			for (String field : definition.getExcludeFields()) {
+				projection.put(field, 0);
+			}
+		}
+		return projection;
+	}
+
+	/*
+	 * The include fields cannot be projected on "o" with the oplog update
+	 * strategy: the projection would remove the "$set" and "$unset"
+	 * modifiers. They are then applied to the documents by the river.
+	 */
+	public static boolean isOplogIncludeProjection(
+			MongoDBRiverDefinition definition) {
+		return definition.getIncludeFields() != null
+				&& !definition.isMongoGridFS()
+				&& !MongoDBRiverDefinition.UPDATE_STRATEGY_OPLOG
+						.equals(definition.getUpdateStrategy());
+	}
+}
@@ -3,6 +3,7 @@ package org.elasticsearch.river.mongodb.util;
 import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
 
 import java.io.IOException;
+import java.util.Map;
 
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.client.Client;
@@ -36,6 +37,21 @@ public abstract class MongoDBRiverHelper {
 		return enabled;
 	}
 
+	/*
+	 * Statistics written by the river (see RiverStats), null if the river
+	 * has not written them yet.
+	 */
+	public static Map<String, Object> getRiverStats(Client client,
+			String riverName) {
+		GetResponse getResponse = client
+				.prepareGet("_river", riverName, MongoDBRiver.STATS).execute()
+				.actionGet();
+		if (!getResponse.isExists()) {
+			return null;
+		}
+		return getResponse.getSourceAsMap();
+	}
+
 	public static void setRiverEnabled(Client client, String riverName, boolean enabled) {
 		XContentBuilder xb;
 		try {
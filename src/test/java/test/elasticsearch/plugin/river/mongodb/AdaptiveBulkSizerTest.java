@@ -0,0 +1,64 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.river.mongodb.AdaptiveBulkSizer;
+import org.elasticsearch.river.mongodb.MongoDBRiverDefinition;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class AdaptiveBulkSizerTest {
+
+	private AdaptiveBulkSizer sizer() {
+		MongoDBRiverDefinition definition = new MongoDBRiverDefinition.Builder()
+				.bulkSize(100).bulkTimeout(TimeValue.timeValueMillis(10))
+				.adaptiveBulk(true).minBulkSize(10).maxBulkSize(1000)
+				.minBulkTimeout(TimeValue.timeValueMillis(1))
+				.maxBulkTimeout(TimeValue.timeValueMillis(500))
+				.targetBulkLatency(TimeValue.timeValueMillis(200)).build();
+		return new AdaptiveBulkSizer(definition,
+				new LinkedBlockingQueue<Object>());
+	}
+
+	@Test
+	public void testBacklogIncreasesBulkSize() {
+		AdaptiveBulkSizer sizer = sizer();
+		Assert.assertEquals(sizer.getBulkSize(), 100);
+		sizer.update(50, 0, 5000);
+		Assert.assertEquals(sizer.getBulkSize(), 199);
+		Assert.assertEquals(sizer.getBulkTimeout().millis(), 1);
+		for (int i = 0; i < 20; i++) {
+			sizer.update(50, 0, 5000);
+		}
+		Assert.assertEquals(sizer.getBulkSize(), 1000);
+	}
+
+	@Test
+	public void testSlowBulkDecreasesBulkSize() {
+		AdaptiveBulkSizer sizer = sizer();
+		sizer.update(300, 0, 5000);
+		Assert.assertEquals(sizer.getBulkSize(), 50);
+		Assert.assertEquals(sizer.getBulkTimeout().millis(), 20);
+		sizer.update(50, 3, 0);
+		Assert.assertEquals(sizer.getBulkSize(), 25);
+		for (int i = 0; i < 10; i++) {
+			sizer.update(300, 0, 0);
+		}
+		Assert.assertEquals(sizer.getBulkSize(), 10);
+		Assert.assertEquals(sizer.getBulkTimeout().millis(), 500);
+	}
+
+	@Test
+	public void testNoBacklogReducesTimeout() {
+		AdaptiveBulkSizer sizer = sizer();
+		sizer.update(20, 0, 0);
+		Assert.assertEquals(sizer.getBulkSize(), 100);
+		Assert.assertEquals(sizer.getBulkTimeout().millis(), 5);
+		for (int i = 0; i < 10; i++) {
+			sizer.update(20, 0, 0);
+		}
+		Assert.assertEquals(sizer.getBulkTimeout().millis(), 1);
+	}
+}
@@ -0,0 +1,79 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.river.mongodb.util.BSONXContentSerializer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+
+@Test
+public class BSONXContentSerializerTest {
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testSerializeDocument() throws Exception {
+		ObjectId id = new ObjectId();
+		BasicDBList tags = new BasicDBList();
+		tags.add("mongodb");
+		tags.add(new BasicDBObject("name", "river"));
+		BSONTimestamp timestamp = new BSONTimestamp(1000, 2);
+		Binary binary = new Binary(new byte[] { 1, 2, 3 });
+		BasicDBObject document = new BasicDBObject("_id", id)
+				.append("count", 3)
+				.append("tags", tags)
+				.append("created", new Date(0))
+				.append("ts", timestamp)
+				.append("binary", binary)
+				.append("data", new byte[] { 1, 2, 3 })
+				.append("empty", null);
+
+		XContentBuilder builder = BSONXContentSerializer.serialize(document,
+				XContentFactory.jsonBuilder());
+		Map<String, Object> map = XContentFactory.xContent(XContentType.JSON)
+				.createParser(builder.string()).mapAndClose();
+
+		Assert.assertEquals(map.get("_id"), id.toString());
+		Assert.assertEquals(map.get("count"), 3);
+		List<Object> list = (List<Object>) map.get("tags");
+		Assert.assertEquals(list.get(0), "mongodb");
+		Assert.assertEquals(((Map<String, Object>) list.get(1)).get("name"),
+				"river");
+		Assert.assertEquals(map.get("created"), "1970-01-01T00:00:00.000Z");
+		// same representation as XContentBuilder.map()
+		Assert.assertEquals(map.get("ts"), timestamp.toString());
+		Assert.assertEquals(map.get("binary"), binary.toString());
+		Map<String, Object> expected = XContentFactory
+				.xContent(XContentType.JSON)
+				.createParser(
+						XContentFactory.jsonBuilder().map(document).string())
+				.mapAndClose();
+		Assert.assertEquals(map, expected);
+		Assert.assertEquals(map.get("data"), "AQID");
+		Assert.assertTrue(map.containsKey("empty"));
+		Assert.assertNull(map.get("empty"));
+	}
+
+	@Test
+	public void testSerializeSmile() throws Exception {
+		BasicDBObject document = new BasicDBObject("_id", new ObjectId())
+				.append("name", "river");
+		XContentBuilder builder = BSONXContentSerializer.serialize(document,
+				XContentFactory.contentBuilder(XContentType.SMILE));
+		Assert.assertEquals(XContentFactory.xContentType(builder.bytes()),
+				XContentType.SMILE);
+		Map<String, Object> map = XContentFactory.xContent(XContentType.SMILE)
+				.createParser(builder.bytes()).mapAndClose();
+		Assert.assertEquals(map.get("name"), "river");
+	}
+}
@@ -0,0 +1,76 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import java.util.Map;
+
+import org.elasticsearch.river.mongodb.CheckpointTracker;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class CheckpointTrackerTest {
+
+	@Test
+	public void testCheckpointWaitsForPreviousEntries() {
+		CheckpointTracker<String, Integer> tracker = new CheckpointTracker<String, Integer>();
+		long first = tracker.add("oplog", 1);
+		long second = tracker.add("oplog", 2);
+		long third = tracker.add("oplog", 3);
+		Assert.assertEquals(tracker.getPending(), 3);
+
+		tracker.acknowledge("oplog", third);
+		Assert.assertTrue(tracker.drainCheckpoints().isEmpty());
+		tracker.acknowledge("oplog", first);
+		Assert.assertEquals(tracker.drainCheckpoints().get("oplog"),
+				Integer.valueOf(1));
+		tracker.acknowledge("oplog", second);
+		Assert.assertEquals(tracker.drainCheckpoints().get("oplog"),
+				Integer.valueOf(3));
+		Assert.assertTrue(tracker.drainCheckpoints().isEmpty());
+		Assert.assertEquals(tracker.getPending(), 0);
+	}
+
+	@Test
+	public void testLanesAreIndependent() throws Exception {
+		CheckpointTracker<String, Integer> tracker = new CheckpointTracker<String, Integer>();
+		long range1 = tracker.add("range1", 10);
+		long range2 = tracker.add("range2", 20);
+		tracker.acknowledge("range2", range2);
+		Map<String, Integer> checkpoints = tracker.drainCheckpoints();
+		Assert.assertEquals(checkpoints.size(), 1);
+		Assert.assertEquals(checkpoints.get("range2"), Integer.valueOf(20));
+
+		tracker.acknowledge("range1", range1);
+		// acknowledging twice is ignored
+		tracker.acknowledge("range1", range1);
+		Assert.assertEquals(tracker.getPending(), 0);
+		Assert.assertEquals(tracker.drainCheckpoints().get("range1"),
+				Integer.valueOf(10));
+		tracker.waitForAll();
+	}
+
+	@Test
+	public void testFailedEntryStopsCheckpoint() throws Exception {
+		CheckpointTracker<String, Integer> tracker = new CheckpointTracker<String, Integer>();
+		long first = tracker.add("oplog", 1);
+		long second = tracker.add("oplog", 2);
+		long third = tracker.add("oplog", 3);
+		long other = tracker.add("range", 10);
+
+		tracker.acknowledge("oplog", third);
+		tracker.fail("oplog", second);
+		tracker.acknowledge("oplog", first);
+		Assert.assertTrue(tracker.isFailed("oplog"));
+		Assert.assertEquals(tracker.drainCheckpoints().get("oplog"),
+				Integer.valueOf(1));
+
+		long fourth = tracker.add("oplog", 4);
+		tracker.acknowledge("oplog", fourth);
+		tracker.acknowledge("range", other);
+		Map<String, Integer> checkpoints = tracker.drainCheckpoints();
+		Assert.assertFalse(checkpoints.containsKey("oplog"));
+		Assert.assertEquals(checkpoints.get("range"), Integer.valueOf(10));
+		Assert.assertFalse(tracker.isFailed("range"));
+		Assert.assertEquals(tracker.getPending(), 0);
+		tracker.waitForAll();
+	}
+}
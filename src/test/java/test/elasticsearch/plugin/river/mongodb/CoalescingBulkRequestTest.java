@@ -0,0 +1,83 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import static org.elasticsearch.client.Requests.indexRequest;
+
+import java.util.Collections;
+
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.update.UpdateRequest;
+import org.elasticsearch.river.mongodb.CoalescingBulkRequest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class CoalescingBulkRequestTest {
+
+	@Test
+	public void testLastOperationWins() {
+		CoalescingBulkRequest requests = new CoalescingBulkRequest();
+		for (int i = 0; i < 5; i++) {
+			requests.add("index", "type", "1", null, null, index("1", i));
+		}
+		requests.add("index", "type", "2", null, null, index("2", 0));
+		requests.add("index", "type", "1", null, null, new DeleteRequest(
+				"index", "type", "1"));
+		Assert.assertEquals(requests.numberOfActions(), 7);
+		Assert.assertEquals(requests.numberOfRequests(), 2);
+
+		BulkRequest bulk = requests.addTo(new BulkRequest());
+		Assert.assertEquals(bulk.requests().size(), 2);
+		Assert.assertTrue(bulk.requests().get(0) instanceof IndexRequest);
+		Assert.assertEquals(((IndexRequest) bulk.requests().get(0)).id(), "2");
+		Assert.assertTrue(bulk.requests().get(1) instanceof DeleteRequest);
+	}
+
+	@Test
+	public void testPartialUpdatesAreKept() {
+		CoalescingBulkRequest requests = new CoalescingBulkRequest();
+		requests.add("index", "type", "1", null, null, index("1", 0));
+		requests.add("index", "type", "1", null, null, update("1"));
+		requests.add("index", "type", "1", null, null, update("1"));
+		Assert.assertEquals(requests.numberOfRequests(), 3);
+		requests.add("index", "type", "1", null, null, index("1", 1));
+		Assert.assertEquals(requests.numberOfRequests(), 1);
+	}
+
+	@Test
+	public void testRoutingIsPartOfTheKey() {
+		CoalescingBulkRequest requests = new CoalescingBulkRequest();
+		requests.add("index", "type", "1", "a", null, index("1", 0));
+		requests.add("index", "type", "1", "b", null, index("1", 1));
+		Assert.assertEquals(requests.numberOfRequests(), 2);
+		requests.clear();
+		Assert.assertEquals(requests.numberOfActions(), 0);
+		Assert.assertEquals(requests.numberOfRequests(), 0);
+	}
+
+	@Test
+	public void testEstimatedSize() {
+		CoalescingBulkRequest requests = new CoalescingBulkRequest();
+		requests.add("index", "type", "1", null, null, index("1", 0));
+		long size = requests.estimatedSizeInBytes();
+		Assert.assertTrue(size > 0);
+		requests.add("index", "type", "2", null, null, index("2", 0));
+		Assert.assertEquals(requests.estimatedSizeInBytes(), 2 * size);
+		// the replaced request is no longer counted
+		requests.add("index", "type", "1", null, null, index("1", 1));
+		Assert.assertEquals(requests.estimatedSizeInBytes(), 2 * size);
+		requests.clear();
+		Assert.assertEquals(requests.estimatedSizeInBytes(), 0);
+	}
+
+	private IndexRequest index(String id, int value) {
+		return indexRequest("index").type("type").id(id)
+				.source(Collections.<String, Object> singletonMap("value", value));
+	}
+
+	private UpdateRequest update(String id) {
+		return new UpdateRequest("index", "type", id).doc(Collections
+				.<String, Object> singletonMap("value", 2));
+	}
+}
@@ -0,0 +1,81 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import static org.elasticsearch.common.io.Streams.copyToStringFromClasspath;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.elasticsearch.river.mongodb.util.FieldFilter;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+
+@Test
+public class FieldFilterTest {
+
+	private DBObject document() throws Exception {
+		DBObject document = (DBObject) JSON
+				.parse(copyToStringFromClasspath("/test/elasticsearch/plugin/river/mongodb/test-exclude-fields-document.json"));
+		document.put("_id", "1");
+		return document;
+	}
+
+	@Test
+	public void testExclude() throws Exception {
+		FieldFilter filter = FieldFilter.exclude(new HashSet<String>(Arrays
+				.asList("lastName", "hobbies", "address.apartment",
+						"address.zip.code")));
+		DBObject document = filter.apply(document());
+		Assert.assertFalse(document.containsField("lastName"));
+		Assert.assertFalse(document.containsField("hobbies"));
+		Assert.assertTrue(document.containsField("firstName"));
+		DBObject address = (DBObject) document.get("address");
+		Assert.assertFalse(address.containsField("apartment"));
+		Assert.assertEquals(address.get("city"), "Boston");
+	}
+
+	@Test
+	public void testExcludeArrayElements() {
+		BasicDBList phones = new BasicDBList();
+		phones.add(new BasicDBObject("number", "1").append("private", true));
+		phones.add(new BasicDBObject("number", "2"));
+		DBObject document = new BasicDBObject("phones", phones);
+		FieldFilter.exclude(
+				new HashSet<String>(Arrays.asList("phones.private"))).apply(
+				document);
+		Assert.assertFalse(((DBObject) phones.get(0)).containsField("private"));
+		Assert.assertEquals(((DBObject) phones.get(0)).get("number"), "1");
+	}
+
+	@Test
+	public void testInclude() throws Exception {
+		FieldFilter filter = FieldFilter.include(new HashSet<String>(Arrays
+				.asList("firstName", "address.city", "address")));
+		DBObject document = filter.apply(document());
+		Assert.assertEquals(document.keySet(), new HashSet<String>(Arrays
+				.asList("_id", "firstName", "address")));
+		// "address" includes all its fields
+		Assert.assertEquals(((DBObject) document.get("address")).keySet()
+				.size(), 5);
+
+		filter = FieldFilter.include(new HashSet<String>(Arrays
+				.asList("address.city")));
+		document = filter.apply(document());
+		Assert.assertEquals(document.keySet(), new HashSet<String>(Arrays
+				.asList("_id", "address")));
+		Assert.assertEquals(((DBObject) document.get("address")).keySet(),
+				new HashSet<String>(Arrays.asList("city")));
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		Assert.assertTrue(FieldFilter.exclude(null).isEmpty());
+		DBObject document = document();
+		Assert.assertSame(FieldFilter.include(null).apply(document), document);
+		Assert.assertEquals(document.keySet().size(), 5);
+	}
+}
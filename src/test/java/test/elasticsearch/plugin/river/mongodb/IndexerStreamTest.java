@@ -0,0 +1,38 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+import org.elasticsearch.river.mongodb.MongoDBRiver;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class IndexerStreamTest {
+
+	@Test
+	public void testGridFSInsertAndDelete() {
+		for (int i = 0; i < 20; i++) {
+			ObjectId id = new ObjectId();
+			// GridFS insert: String _id
+			Map<String, Object> insert = new HashMap<String, Object>();
+			insert.put(MongoDBRiver.IS_MONGODB_ATTACHMENT, true);
+			insert.put(MongoDBRiver.MONGODB_ID_FIELD, id.toString());
+			// delete from the oplog: ObjectId _id
+			Map<String, Object> delete = new HashMap<String, Object>();
+			delete.put(MongoDBRiver.MONGODB_ID_FIELD, id);
+			for (int streams = 1; streams <= 8; streams++) {
+				Assert.assertEquals(MongoDBRiver.getStream(delete, streams),
+						MongoDBRiver.getStream(insert, streams));
+			}
+		}
+	}
+
+	@Test
+	public void testWithoutId() {
+		Assert.assertEquals(MongoDBRiver.getStream(null, 4), 0);
+		Assert.assertEquals(
+				MongoDBRiver.getStream(new HashMap<String, Object>(), 4), 0);
+	}
+}
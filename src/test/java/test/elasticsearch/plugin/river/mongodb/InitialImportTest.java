@@ -0,0 +1,102 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import static org.elasticsearch.common.xcontent.XContentFactory.jsonBuilder;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.bson.types.BSONTimestamp;
+import org.bson.types.ObjectId;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.river.mongodb.InitialImport;
+import org.elasticsearch.river.mongodb.MongoDBRiver;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class InitialImportTest {
+
+	@Test
+	public void testSerializeAndParse() throws Exception {
+		ObjectId split1 = new ObjectId();
+		ObjectId split2 = new ObjectId();
+		ObjectId lastId = new ObjectId();
+		BSONTimestamp timestamp = new BSONTimestamp(1376000000, 3);
+		InitialImport initialImport = new InitialImport(timestamp,
+				Arrays.<Object> asList(split1, split2));
+		Assert.assertEquals(initialImport.getRanges().size(), 3);
+		initialImport.getRanges().get(0).setDone(true);
+		initialImport.getRanges().get(1).setLastId(lastId);
+		Assert.assertFalse(initialImport.isDone());
+
+		XContentBuilder builder = jsonBuilder().startObject();
+		initialImport.toXContent(builder);
+		builder.endObject();
+		Map<String, Object> source = XContentFactory
+				.xContent(XContentType.JSON).createParser(builder.string())
+				.mapAndClose();
+
+		InitialImport parsed = InitialImport.parse(source);
+		Assert.assertNotNull(parsed);
+		Assert.assertEquals(parsed.getTimestamp().getTime(), timestamp.getTime());
+		Assert.assertEquals(parsed.getTimestamp().getInc(), timestamp.getInc());
+		Assert.assertEquals(parsed.getRanges().size(), 3);
+		Assert.assertEquals(parsed.getPendingRanges().size(), 2);
+		InitialImport.Range range = parsed.getRanges().get(1);
+		Assert.assertEquals(range.getLower(), split1);
+		Assert.assertEquals(range.getUpper(), split2);
+		Assert.assertEquals(range.getResumeFrom(), lastId);
+		Assert.assertNull(parsed.getRanges().get(0).getLower());
+		Assert.assertNull(parsed.getRanges().get(2).getUpper());
+		Assert.assertEquals(parsed.getRanges().get(2).getResumeFrom(), split2);
+	}
+
+	@Test
+	public void testDone() {
+		InitialImport initialImport = new InitialImport(new BSONTimestamp(
+				1376000000, 1), Arrays.<Object> asList());
+		Assert.assertEquals(initialImport.getRanges().size(), 1);
+		initialImport.getRanges().get(0).setDone(true);
+		Assert.assertTrue(initialImport.isDone());
+	}
+
+	/*
+	 * The slurper of each shard saves its progress to its own document.
+	 */
+	@Test
+	public void testShard() throws Exception {
+		InitialImport initialImport = new InitialImport("shard1",
+				new BSONTimestamp(1376000000, 1), Arrays.<Object> asList(1));
+		XContentBuilder builder = jsonBuilder().startObject();
+		initialImport.toXContent(builder);
+		builder.endObject();
+		Map<String, Object> source = XContentFactory
+				.xContent(XContentType.JSON).createParser(builder.string())
+				.mapAndClose();
+		InitialImport parsed = InitialImport.parse("shard1", source);
+		Assert.assertEquals(parsed.getShard(), "shard1");
+		Assert.assertSame(parsed.getRanges().get(0).getInitialImport(), parsed);
+
+		Assert.assertEquals(MongoDBRiver.getInitialImportId("db.collection",
+				null), "db.collection$initial_import");
+		Assert.assertFalse(MongoDBRiver.getInitialImportId("db.collection",
+				"shard1").equals(
+				MongoDBRiver.getInitialImportId("db.collection", "shard2")));
+	}
+
+	@Test
+	public void testSelectSplitPoints() {
+		Assert.assertEquals(InitialImport.selectSplitPoints(
+				Arrays.<Object> asList(1, 2, 3, 4, 5, 6, 7, 8, 9), 4), Arrays
+				.<Object> asList(2, 5, 7));
+		// fewer candidates than partitions: all of them
+		Assert.assertEquals(InitialImport.selectSplitPoints(
+				Arrays.<Object> asList(1, 2), 4), Arrays.<Object> asList(1, 2));
+		Assert.assertTrue(InitialImport.selectSplitPoints(
+				Arrays.<Object> asList(), 4).isEmpty());
+		Assert.assertTrue(InitialImport.selectSplitPoints(
+				Arrays.<Object> asList(1, 2, 3), 1).isEmpty());
+	}
+}
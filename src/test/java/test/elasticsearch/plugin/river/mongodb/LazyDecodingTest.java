@@ -0,0 +1,89 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import org.bson.BasicBSONEncoder;
+import org.bson.LazyBSONObject;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.ObjectId;
+import org.elasticsearch.river.mongodb.MongoDBRiver;
+import org.elasticsearch.river.mongodb.util.LazyOplogDecoder;
+import org.elasticsearch.river.mongodb.util.MongoDBHelper;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.LazyDBDecoder;
+
+@Test
+public class LazyDecodingTest {
+
+	private DBObject lazyOplogEntry() {
+		BasicDBObject entry = new BasicDBObject(MongoDBRiver.OPLOG_TIMESTAMP,
+				new BSONTimestamp(1000, 1))
+				.append(MongoDBRiver.OPLOG_OPERATION,
+						MongoDBRiver.OPLOG_INSERT_OPERATION)
+				.append(MongoDBRiver.OPLOG_NAMESPACE, "mydb.mycollection")
+				.append(MongoDBRiver.OPLOG_FROM_MIGRATE, true)
+				.append(MongoDBRiver.OPLOG_OBJECT,
+						new BasicDBObject("_id", new ObjectId()).append(
+								"address", new BasicDBObject("city", "Paris")
+										.append("zip", "75001")));
+		byte[] bytes = new BasicBSONEncoder().encode(entry);
+		return LazyOplogDecoder.FACTORY.create().decode(bytes,
+				(DBCollection) null);
+	}
+
+	@Test
+	public void testReadLazyEntry() {
+		DBObject entry = lazyOplogEntry();
+		Assert.assertTrue(entry instanceof LazyBSONObject);
+		Assert.assertEquals(entry.get(MongoDBRiver.OPLOG_OPERATION),
+				MongoDBRiver.OPLOG_INSERT_OPERATION);
+		Assert.assertEquals(entry.get(MongoDBRiver.OPLOG_TIMESTAMP),
+				new BSONTimestamp(1000, 1));
+		Assert.assertEquals(entry.get(MongoDBRiver.OPLOG_FROM_MIGRATE),
+				Boolean.TRUE);
+	}
+
+	@Test
+	public void testDecode() {
+		DBObject object = MongoDBHelper.decode(lazyOplogEntry().get(
+				MongoDBRiver.OPLOG_OBJECT));
+		Assert.assertTrue(object instanceof BasicDBObject);
+		DBObject address = (DBObject) object.get("address");
+		Assert.assertTrue(address instanceof BasicDBObject);
+		address.removeField("zip");
+		Assert.assertEquals(address.keySet().size(), 1);
+		Assert.assertEquals(address.get("city"), "Paris");
+	}
+
+	@Test
+	public void testDecodeBasicObject() {
+		DBObject object = new BasicDBObject("name", "river");
+		Assert.assertSame(MongoDBHelper.decode(object), object);
+	}
+
+	/*
+	 * The objects of the entry are decoded from the bytes of the entry.
+	 */
+	@Test
+	public void testDecodeFromEntryBytes() {
+		DBObject entry = lazyOplogEntry();
+		Object lazyObject = entry.get(MongoDBRiver.OPLOG_OBJECT);
+		Assert.assertTrue(lazyObject instanceof LazyOplogDecoder.DecodableObject);
+		DBObject object = MongoDBHelper.decode(lazyObject);
+		Assert.assertTrue(object instanceof BasicDBObject);
+		Assert.assertEquals(((DBObject) object.get("address")).get("zip"),
+				"75001");
+		Assert.assertEquals(object.keySet().size(), 2);
+	}
+
+	@Test
+	public void testDecodeLazyDBObject() {
+		BasicDBObject object = new BasicDBObject("name", "river");
+		DBObject lazyObject = LazyDBDecoder.FACTORY.create().decode(
+				new BasicBSONEncoder().encode(object), (DBCollection) null);
+		Assert.assertEquals(MongoDBHelper.decode(lazyObject), object);
+	}
+}
@@ -0,0 +1,101 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.elasticsearch.river.mongodb.MongoDBRiver;
+import org.elasticsearch.river.mongodb.MongoDBRiverDefinition;
+import org.elasticsearch.river.mongodb.util.MongoDBProjectionHelper;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.mongodb.DBObject;
+
+@Test
+public class MongoDBProjectionHelperTest {
+
+	@Test
+	public void testOplogProjection() {
+		MongoDBRiverDefinition definition = new MongoDBRiverDefinition.Builder()
+				.build();
+		DBObject projection = MongoDBProjectionHelper
+				.getOplogProjection(definition);
+		Assert.assertEquals(projection.get(MongoDBRiver.OPLOG_HASH), 0);
+		Assert.assertEquals(projection.get(MongoDBRiver.OPLOG_VERSION), 0);
+		Assert.assertEquals(projection.get(MongoDBRiver.OPLOG_FROM_MIGRATE), 0);
+		Assert.assertFalse(projection.containsField(MongoDBRiver.OPLOG_OBJECT));
+	}
+
+	@Test
+	public void testGridFSOplogProjection() {
+		MongoDBRiverDefinition definition = new MongoDBRiverDefinition.Builder()
+				.mongoGridFS(true).build();
+		DBObject projection = MongoDBProjectionHelper
+				.getOplogProjection(definition);
+		Assert.assertEquals(projection.keySet().size(), 5);
+		Assert.assertEquals(projection.get(MongoDBRiver.OPLOG_TIMESTAMP), 1);
+		Assert.assertEquals(projection.get(MongoDBRiver.OPLOG_OBJECT + "."
+				+ MongoDBRiver.MONGODB_ID_FIELD), 1);
+		Assert.assertEquals(projection.get(MongoDBRiver.OPLOG_UPDATE + "."
+				+ MongoDBRiver.MONGODB_ID_FIELD), 1);
+	}
+
+	@Test
+	public void testExcludeFieldsProjection() {
+		MongoDBRiverDefinition definition = new MongoDBRiverDefinition.Builder()
+				.excludeFields(
+						new HashSet<String>(Arrays.asList("_id", "picture",
+								"address.apartment"))).build();
+		DBObject projection = MongoDBProjectionHelper
+				.getOplogProjection(definition);
+		Assert.assertEquals(projection.get(MongoDBRiver.OPLOG_OBJECT
+				+ ".picture"), 0);
+		Assert.assertEquals(projection.get(MongoDBRiver.OPLOG_OBJECT
+				+ ".address.apartment"), 0);
+		Assert.assertFalse(projection.containsField(MongoDBRiver.OPLOG_OBJECT
+				+ "." + MongoDBRiver.MONGODB_ID_FIELD));
+
+		projection = MongoDBProjectionHelper
+				.getCollectionProjection(definition);
+		Assert.assertEquals(projection.keySet().size(), 3);
+		Assert.assertEquals(projection.get("address.apartment"), 0);
+	}
+
+	@Test
+	public void testIncludeFieldsProjection() {
+		MongoDBRiverDefinition definition = new MongoDBRiverDefinition.Builder()
+				.includeFields(
+						new HashSet<String>(Arrays.asList("title",
+								"author.name")))
+				.updateStrategy(MongoDBRiverDefinition.UPDATE_STRATEGY_REFETCH)
+				.build();
+		Assert.assertTrue(MongoDBProjectionHelper
+				.isOplogIncludeProjection(definition));
+		DBObject projection = MongoDBProjectionHelper
+				.getOplogProjection(definition);
+		Assert.assertEquals(projection.get(MongoDBRiver.OPLOG_OBJECT
+				+ ".title"), 1);
+		Assert.assertEquals(projection.get(MongoDBRiver.OPLOG_OBJECT
+				+ ".author.name"), 1);
+		Assert.assertEquals(projection.get(MongoDBRiver.OPLOG_OBJECT + "."
+				+ MongoDBRiver.MONGODB_ID_FIELD), 1);
+		Assert.assertEquals(projection.get(MongoDBRiver.OPLOG_UPDATE), 1);
+		Assert.assertFalse(projection.containsField(MongoDBRiver.OPLOG_HASH));
+
+		projection = MongoDBProjectionHelper
+				.getCollectionProjection(definition);
+		Assert.assertEquals(projection.keySet().size(), 2);
+		Assert.assertEquals(projection.get("author.name"), 1);
+
+		definition = new MongoDBRiverDefinition.Builder()
+				.includeFields(new HashSet<String>(Arrays.asList("title")))
+				.updateStrategy(MongoDBRiverDefinition.UPDATE_STRATEGY_OPLOG)
+				.build();
+		Assert.assertFalse(MongoDBProjectionHelper
+				.isOplogIncludeProjection(definition));
+		projection = MongoDBProjectionHelper.getOplogProjection(definition);
+		Assert.assertEquals(projection.get(MongoDBRiver.OPLOG_HASH), 0);
+		Assert.assertFalse(projection.containsField(MongoDBRiver.OPLOG_OBJECT
+				+ ".title"));
+	}
+}
@@ -0,0 +1,68 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.SettingsException;
+import org.elasticsearch.river.RiverName;
+import org.elasticsearch.river.RiverSettings;
+import org.elasticsearch.river.mongodb.MongoDBRiver;
+import org.elasticsearch.river.mongodb.MongoDBRiverDefinition;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class MongoDBRiverDefinitionTest {
+
+	private MongoDBRiverDefinition parse(Object includeFields) {
+		Map<String, Object> options = new HashMap<String, Object>();
+		options.put(MongoDBRiverDefinition.EXCLUDE_FIELDS_FIELD,
+				Arrays.asList("secret"));
+		options.put(MongoDBRiverDefinition.INCLUDE_FIELDS_FIELD, includeFields);
+		return parseOptions(options);
+	}
+
+	private MongoDBRiverDefinition parseOptions(Map<String, Object> options) {
+		Map<String, Object> mongodb = new HashMap<String, Object>();
+		mongodb.put(MongoDBRiverDefinition.OPTIONS_FIELD, options);
+		Map<String, Object> settings = new HashMap<String, Object>();
+		settings.put(MongoDBRiver.TYPE, mongodb);
+		return MongoDBRiverDefinition.parseSettings(new RiverName(
+				MongoDBRiver.TYPE, "river"), new RiverSettings(
+				ImmutableSettings.settingsBuilder().build(), settings), null);
+	}
+
+	@Test
+	public void testIncludeFields() {
+		MongoDBRiverDefinition definition = parse(Arrays.asList("name",
+				"address.city"));
+		Assert.assertEquals(definition.getIncludeFields().size(), 2);
+		// exclude_fields is ignored
+		Assert.assertNull(definition.getExcludeFields());
+		Assert.assertTrue(definition.getFieldFilter().isInclude());
+	}
+
+	@Test
+	public void testEmptyIncludeFields() {
+		MongoDBRiverDefinition definition = parse(Collections.emptyList());
+		Assert.assertNull(definition.getIncludeFields());
+		Assert.assertEquals(definition.getExcludeFields().size(), 1);
+		Assert.assertFalse(definition.getFieldFilter().isInclude());
+	}
+
+	@Test(expectedExceptions = SettingsException.class)
+	public void testIncludeFieldsNotArray() {
+		parse("name");
+	}
+
+	@Test
+	public void testSkipInitialImport() {
+		Map<String, Object> options = new HashMap<String, Object>();
+		Assert.assertFalse(parseOptions(options).isSkipInitialImport());
+		options.put(MongoDBRiverDefinition.SKIP_INITIAL_IMPORT_FIELD, true);
+		Assert.assertTrue(parseOptions(options).isSkipInitialImport());
+	}
+}
@@ -0,0 +1,95 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.elasticsearch.river.mongodb.OplogUpdate;
+import org.elasticsearch.river.mongodb.util.FieldFilter;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+
+@Test
+public class OplogUpdateTest {
+
+	private final ObjectId id = new ObjectId();
+	private final DBObject criteria = new BasicDBObject("_id", id);
+
+	@Test
+	public void testReplacement() {
+		DBObject object = (DBObject) JSON
+				.parse("{'firstName': 'John', 'lastName': 'Doe'}");
+		OplogUpdate update = OplogUpdate.parse(criteria, object,
+				FieldFilter.exclude(new HashSet<String>(Arrays
+						.asList("lastName"))));
+		Assert.assertNotNull(update);
+		Assert.assertTrue(update.isReplacement());
+		Assert.assertEquals(update.getDocument().get("_id"), id);
+		Assert.assertEquals(update.getDocument().get("firstName"), "John");
+		Assert.assertFalse(update.getDocument().containsField("lastName"));
+	}
+
+	@Test
+	public void testSet() {
+		DBObject object = (DBObject) JSON
+				.parse("{'$set': {'address.city': 'Paris', 'age': 40, 'address.apartment': 3}}");
+		OplogUpdate update = OplogUpdate.parse(criteria, object,
+				FieldFilter.exclude(new HashSet<String>(Arrays
+						.asList("address.apartment"))));
+		Assert.assertNotNull(update);
+		Assert.assertFalse(update.isReplacement());
+		Assert.assertTrue(update.getUnsetFields().isEmpty());
+		DBObject document = update.getDocument();
+		Assert.assertEquals(document.get("_id"), id);
+		Assert.assertEquals(document.get("age"), 40);
+		DBObject address = (DBObject) document.get("address");
+		Assert.assertEquals(address.get("city"), "Paris");
+		Assert.assertFalse(address.containsField("apartment"));
+	}
+
+	@Test
+	public void testSetSubDocument() {
+		// address.zip would be kept by the merge of a partial update
+		Assert.assertNull(OplogUpdate.parse(criteria, (DBObject) JSON
+				.parse("{'$set': {'address': {'city': 'Paris'}}}"), null));
+		Assert.assertNull(OplogUpdate.parse(criteria, (DBObject) JSON
+				.parse("{'$set': {'name.first': {'value': 'John'}}}"), null));
+		// arrays are replaced
+		OplogUpdate update = OplogUpdate.parse(criteria,
+				(DBObject) JSON.parse("{'$set': {'tags': ['a', {'b': 1}]}}"),
+				null);
+		Assert.assertNotNull(update);
+		Assert.assertEquals(((List<?>) update.getDocument().get("tags")).size(),
+				2);
+	}
+
+	@Test
+	public void testUnset() {
+		DBObject object = (DBObject) JSON
+				.parse("{'$unset': {'hobbies': 1}}");
+		OplogUpdate update = OplogUpdate.parse(criteria, object, null);
+		Assert.assertNotNull(update);
+		Assert.assertEquals(update.getUnsetFields(), Arrays.asList("hobbies"));
+		Assert.assertFalse(update.isEmpty());
+	}
+
+	@Test
+	public void testCannotInterpret() {
+		Assert.assertNull(OplogUpdate.parse(criteria,
+				(DBObject) JSON.parse("{'$set': {'tags.1': 'x'}}"), null));
+		Assert.assertNull(OplogUpdate.parse(criteria,
+				(DBObject) JSON.parse("{'$unset': {'address.city': 1}}"),
+				null));
+		Assert.assertNull(OplogUpdate.parse(criteria, (DBObject) JSON
+				.parse("{'$set': {'a': 1}, '$unset': {'b': 1}}"), null));
+		Assert.assertNull(OplogUpdate.parse(criteria,
+				(DBObject) JSON.parse("{'$pull': {'a': 1}}"), null));
+		Assert.assertNull(OplogUpdate.parse(new BasicDBObject(),
+				(DBObject) JSON.parse("{'a': 1}"), null));
+	}
+}
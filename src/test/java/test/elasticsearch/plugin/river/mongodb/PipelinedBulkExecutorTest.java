@@ -0,0 +1,241 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.types.BSONTimestamp;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.transport.NoNodeAvailableException;
+import org.elasticsearch.river.mongodb.CheckpointTracker;
+import org.elasticsearch.river.mongodb.PipelinedBulkExecutor;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class PipelinedBulkExecutorTest {
+
+	private static class TestBulkExecutor extends PipelinedBulkExecutor {
+		private final List<ActionListener<BulkResponse>> listeners = new ArrayList<ActionListener<BulkResponse>>();
+
+		TestBulkExecutor(int maxInFlight) {
+			super(null, maxInFlight);
+		}
+
+		@Override
+		protected synchronized void executeBulk(BulkRequest request,
+				ActionListener<BulkResponse> listener) {
+			listeners.add(listener);
+		}
+
+		synchronized void acknowledge(int i) {
+			listeners.get(i).onResponse(
+					new BulkResponse(new BulkItemResponse[0], 1));
+		}
+
+		synchronized void fail(int i) {
+			listeners.get(i).onFailure(new NoNodeAvailableException());
+		}
+	}
+
+	/*
+	 * Fails the execution of one of the bulks.
+	 */
+	private static class FailingBulkExecutor extends TestBulkExecutor {
+		private final int failed;
+		private int executed = 0;
+
+		FailingBulkExecutor(int maxInFlight, int failed) {
+			super(maxInFlight);
+			this.failed = failed;
+		}
+
+		@Override
+		protected synchronized void executeBulk(BulkRequest request,
+				ActionListener<BulkResponse> listener) {
+			if (executed++ == failed) {
+				throw new NoNodeAvailableException();
+			}
+			super.executeBulk(request, listener);
+		}
+	}
+
+	private BulkRequest bulk() {
+		return new BulkRequest().add(new IndexRequest("index", "type", "1")
+				.source("{}"));
+	}
+
+	private Set<String> keys(String... keys) {
+		return new HashSet<String>(Arrays.asList(keys));
+	}
+
+	private Runnable record(final List<Integer> acknowledged, final int i) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				acknowledged.add(i);
+			}
+		};
+	}
+
+	/*
+	 * Acknowledges or fails the entry in the tracker, as the indexer does.
+	 */
+	private Runnable checkpoint(final CheckpointTracker<String, BSONTimestamp> tracker,
+			final long sequence, final boolean acknowledged) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				if (acknowledged) {
+					tracker.acknowledge("oplog", sequence);
+				} else {
+					tracker.fail("oplog", sequence);
+				}
+			}
+		};
+	}
+
+	@Test
+	public void testAcknowledgedInOrder() throws Exception {
+		List<Integer> acknowledged = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		TestBulkExecutor executor = new TestBulkExecutor(3);
+		executor.execute(bulk(), keys("a"), record(acknowledged, 0));
+		executor.execute(bulk(), keys("b"), record(acknowledged, 1));
+		executor.execute(bulk(), keys("c"), record(acknowledged, 2));
+		Assert.assertEquals(executor.getInFlight(), 3);
+
+		executor.acknowledge(2);
+		executor.acknowledge(1);
+		Assert.assertTrue(acknowledged.isEmpty());
+		executor.acknowledge(0);
+		Assert.assertEquals(acknowledged, Arrays.asList(0, 1, 2));
+		Assert.assertEquals(executor.getInFlight(), 0);
+	}
+
+	@Test
+	public void testEmptyBulkWaitsForPreviousBulks() throws Exception {
+		List<Integer> acknowledged = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		TestBulkExecutor executor = new TestBulkExecutor(2);
+		executor.execute(bulk(), keys("a"), record(acknowledged, 0));
+		executor.execute(new BulkRequest(), keys(), record(acknowledged, 1));
+		Assert.assertTrue(acknowledged.isEmpty());
+		executor.acknowledge(0);
+		Assert.assertEquals(acknowledged, Arrays.asList(0, 1));
+		executor.waitForAll();
+	}
+
+	@Test
+	public void testConflictingBulkWaits() throws Exception {
+		final List<Integer> acknowledged = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		final TestBulkExecutor executor = new TestBulkExecutor(3);
+		executor.execute(bulk(), keys("a", "b"), record(acknowledged, 0));
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					executor.execute(bulk(), keys("b"),
+							record(acknowledged, 1));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		thread.start();
+		thread.join(200);
+		Assert.assertTrue(thread.isAlive());
+		Assert.assertEquals(executor.getInFlight(), 1);
+
+		executor.acknowledge(0);
+		thread.join(5000);
+		Assert.assertFalse(thread.isAlive());
+		executor.acknowledge(1);
+		Assert.assertEquals(acknowledged, Arrays.asList(0, 1));
+	}
+
+	@Test
+	public void testFailedBulkIsNotAcknowledged() throws Exception {
+		List<Integer> acknowledged = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		List<Integer> failed = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		TestBulkExecutor executor = new TestBulkExecutor(2);
+		executor.execute(bulk(), keys("a"), record(acknowledged, 0),
+				record(failed, 0));
+		executor.execute(bulk(), keys("a"), record(acknowledged, 1),
+				record(failed, 1));
+		executor.fail(0);
+		// the keys are released by the failed bulk
+		executor.execute(bulk(), keys("a"), record(acknowledged, 2),
+				record(failed, 2));
+		executor.acknowledge(1);
+		executor.acknowledge(2);
+		executor.waitForAll();
+		Assert.assertEquals(failed, Arrays.asList(0));
+		Assert.assertEquals(acknowledged, Arrays.asList(1, 2));
+		Assert.assertEquals(executor.getInFlight(), 0);
+	}
+
+	@Test
+	public void testListenerGetsTheResponse() throws Exception {
+		final List<BulkResponse> responses = Collections
+				.synchronizedList(new ArrayList<BulkResponse>());
+		TestBulkExecutor executor = new TestBulkExecutor(1);
+		executor.execute(bulk(), keys("a"), new ActionListener<BulkResponse>() {
+			@Override
+			public void onResponse(BulkResponse response) {
+				responses.add(response);
+			}
+
+			@Override
+			public void onFailure(Throwable e) {
+				Assert.fail("unexpected failure", e);
+			}
+		});
+		executor.acknowledge(0);
+		Assert.assertEquals(responses.size(), 1);
+		Assert.assertEquals(responses.get(0).getItems().length, 0);
+	}
+
+	@Test
+	public void testFailedBulkDoesNotMoveLastTimestamp() throws Exception {
+		CheckpointTracker<String, BSONTimestamp> tracker = new CheckpointTracker<String, BSONTimestamp>();
+		// the third bulk fails when executed
+		FailingBulkExecutor executor = new FailingBulkExecutor(3, 2);
+		for (int i = 0; i < 4; i++) {
+			long sequence = tracker.add("oplog", new BSONTimestamp(i + 1, 0));
+			executor.execute(bulk(), keys(String.valueOf(i)),
+					checkpoint(tracker, sequence, true),
+					checkpoint(tracker, sequence, false));
+			if (i == 1) {
+				executor.acknowledge(0);
+				executor.acknowledge(1);
+			}
+		}
+		executor.acknowledge(2);
+		executor.waitForAll();
+		tracker.waitForAll();
+
+		// _last_ts stays on the last entry before the failed bulk
+		Map<String, BSONTimestamp> checkpoints = tracker.drainCheckpoints();
+		Assert.assertEquals(checkpoints.get("oplog"), new BSONTimestamp(2, 0));
+		Assert.assertTrue(tracker.isFailed("oplog"));
+		long sequence = tracker.add("oplog", new BSONTimestamp(5, 0));
+		executor.execute(bulk(), keys("5"),
+				checkpoint(tracker, sequence, true),
+				checkpoint(tracker, sequence, false));
+		executor.acknowledge(3);
+		executor.waitForAll();
+		Assert.assertTrue(tracker.drainCheckpoints().isEmpty());
+	}
+}
@@ -0,0 +1,93 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import java.util.Map;
+
+import org.bson.types.BSONTimestamp;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.river.mongodb.MongoDBRiver;
+import org.elasticsearch.river.mongodb.RiverStats;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class RiverStatsTest {
+
+	@Test
+	public void testLag() {
+		RiverStats stats = new RiverStats();
+		Assert.assertEquals(stats.getLagSeconds(), -1);
+		stats.setLastOplogTimestamp(new BSONTimestamp(1000, 1));
+		stats.setLastIndexedTimestamp(new BSONTimestamp(990, 5));
+		Assert.assertEquals(stats.getLagSeconds(), 10);
+		stats.setLastIndexedTimestamp(new BSONTimestamp(1000, 1));
+		Assert.assertEquals(stats.getLagSeconds(), 0);
+	}
+
+	@Test
+	public void testLagBehindOplogHead() {
+		RiverStats stats = new RiverStats();
+		// the slurper indexed everything it read but is behind the oplog
+		stats.setLastOplogTimestamp(new BSONTimestamp(1000, 1));
+		stats.setLastIndexedTimestamp(new BSONTimestamp(1000, 1));
+		stats.setOplogHeadTimestamp(new BSONTimestamp(1300, 4));
+		Assert.assertEquals(stats.getLagSeconds(), 300);
+		// the slurper caught up with an older head
+		stats.setLastOplogTimestamp(new BSONTimestamp(1400, 1));
+		stats.setLastIndexedTimestamp(new BSONTimestamp(1350, 1));
+		Assert.assertEquals(stats.getLagSeconds(), 50);
+	}
+
+	@Test
+	public void testBulkLatency() {
+		RiverStats stats = new RiverStats();
+		stats.bulkExecuted(new BulkResponse(new BulkItemResponse[0], 5));
+		stats.bulkExecuted(new BulkResponse(new BulkItemResponse[0], 80));
+		stats.bulkExecuted(new BulkResponse(
+				new BulkItemResponse[] { new BulkItemResponse(0, "index",
+						new BulkItemResponse.Failure("index", "type", "1",
+								"failure")) }, 60000));
+		Assert.assertEquals(stats.getBulkLatencyCount(0), 1);
+		Assert.assertEquals(stats.getBulkLatencyCount(2), 1);
+		Assert.assertEquals(
+				stats.getBulkLatencyCount(RiverStats.BULK_LATENCY_BUCKETS.length),
+				1);
+		Assert.assertEquals(stats.getFailedDocuments(), 1);
+	}
+
+	@Test
+	public void testToXContent() throws Exception {
+		RiverStats stats = new RiverStats();
+		stats.documentIndexed(MongoDBRiver.OPLOG_INSERT_OPERATION);
+		stats.documentIndexed(MongoDBRiver.OPLOG_INSERT_OPERATION);
+		stats.documentIndexed(MongoDBRiver.OPLOG_UPDATE_OPERATION);
+		stats.documentIndexed(MongoDBRiver.OPLOG_COMMAND_OPERATION);
+		stats.getStage(RiverStats.SCRIPT_STAGE).record(3000000, 2);
+		stats.bulkFailed();
+
+		XContentBuilder builder = XContentFactory.jsonBuilder().startObject();
+		stats.toXContent(builder, 42).endObject();
+		Map<String, Object> map = XContentFactory.xContent(XContentType.JSON)
+				.createParser(builder.string()).mapAndClose();
+		Assert.assertEquals(map.get(RiverStats.QUEUE_DEPTH_FIELD), 42);
+		Assert.assertEquals(map.get(RiverStats.LAG_FIELD), -1);
+		Assert.assertEquals(XContentMapValues.extractValue(
+				"documents.inserted", map), 2);
+		Assert.assertEquals(XContentMapValues.extractValue(
+				"documents.updated", map), 1);
+		Assert.assertEquals(XContentMapValues.extractValue(
+				"documents.deleted", map), 0);
+		Assert.assertEquals(XContentMapValues.extractValue("bulk.failed", map),
+				1);
+		Assert.assertEquals(XContentMapValues.extractValue(
+				"stages.script.time_ms", map), 3);
+		Assert.assertEquals(XContentMapValues.extractValue(
+				"stages.script.documents", map), 2);
+		Assert.assertEquals(XContentMapValues.extractValue(
+				"stages.bulk.count", map), 0);
+	}
+}
@@ -0,0 +1,60 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.elasticsearch.river.mongodb.RollingRate;
+import org.elasticsearch.river.mongodb.StageStats;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class RollingRateTest {
+
+	private static class TestRollingRate extends RollingRate {
+		// static: nanoTime() is called by the constructor
+		private static final AtomicLong clock = new AtomicLong();
+
+		TestRollingRate(int windowSeconds) {
+			super(windowSeconds);
+		}
+
+		static void advance(long seconds) {
+			clock.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+		}
+
+		@Override
+		protected long nanoTime() {
+			return clock.get();
+		}
+	}
+
+	@Test
+	public void testRollingWindow() {
+		RollingRate rate = new TestRollingRate(10);
+		rate.add(10);
+		// first second of the window
+		Assert.assertEquals(rate.getRatePerSecond(), 10.0);
+		TestRollingRate.advance(1);
+		rate.add(30);
+		Assert.assertEquals(rate.getRatePerSecond(), 20.0);
+		TestRollingRate.advance(9);
+		// the first second is out of the window
+		Assert.assertEquals(rate.getRatePerSecond(), 3.0);
+		TestRollingRate.advance(10);
+		Assert.assertEquals(rate.getRatePerSecond(), 0.0);
+		rate.add(50);
+		Assert.assertEquals(rate.getRatePerSecond(), 5.0);
+	}
+
+	@Test
+	public void testStageStats() {
+		StageStats stage = new StageStats(new TestRollingRate(10));
+		stage.record(1500000, 10);
+		stage.record(500000, 30);
+		Assert.assertEquals(stage.getCount(), 2);
+		Assert.assertEquals(stage.getDocuments(), 40);
+		Assert.assertEquals(stage.getTotalNanos(), 2000000);
+		Assert.assertEquals(stage.getDocumentsPerSecond(), 40.0);
+	}
+}
@@ -0,0 +1,44 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.river.mongodb.ScriptContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class ScriptContextTest {
+
+	@Test
+	public void testResetRemovesScriptValues() {
+		ScriptContext ctx = new ScriptContext();
+		Map<String, Object> document = Collections.<String, Object> singletonMap(
+				"_id", "1");
+		ctx.reset(document, "i", "1");
+		ctx.put("_index", "other");
+		ctx.put("ignore", true);
+
+		ctx.reset(document, "u", "");
+		Assert.assertEquals(ctx.size(), 2);
+		Assert.assertSame(ctx.get(ScriptContext.DOCUMENT_FIELD), document);
+		Assert.assertEquals(ctx.get(ScriptContext.OPERATION_FIELD), "u");
+		Assert.assertFalse(ctx.containsKey(ScriptContext.ID_FIELD));
+		Assert.assertFalse(ctx.containsKey("_index"));
+	}
+
+	@Test
+	public void testBatchContexts() {
+		List<Object> result = Arrays.<Object> asList(new ScriptContext(),
+				new ScriptContext());
+		Assert.assertSame(ScriptContext.batchContexts(result, 2), result);
+		// wrong size, not a list, not a map for each document
+		Assert.assertNull(ScriptContext.batchContexts(result, 3));
+		Assert.assertNull(ScriptContext.batchContexts("ctxs", 2));
+		Assert.assertNull(ScriptContext.batchContexts(
+				Arrays.<Object> asList(new ScriptContext(), "ignored"), 2));
+		Assert.assertNull(ScriptContext.batchContexts(null, 0));
+	}
+}
@@ -0,0 +1,150 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.river.mongodb.ScriptPool;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class ScriptPoolTest {
+
+	private List<Callable<String>> tasks(final int count) {
+		List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+		for (int i = 0; i < count; i++) {
+			final int task = i;
+			tasks.add(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					// the first tasks finish last
+					Thread.sleep((count - task) * 10);
+					return task + "-" + Thread.currentThread().getName();
+				}
+			});
+		}
+		return tasks;
+	}
+
+	private List<Integer> order(List<Future<String>> futures)
+			throws Exception {
+		List<Integer> order = new ArrayList<Integer>();
+		for (Future<String> future : futures) {
+			order.add(Integer.valueOf(future.get().split("-")[0]));
+		}
+		return order;
+	}
+
+	@Test
+	public void testResultsInTaskOrder() throws Exception {
+		ScriptPool pool = new ScriptPool(4, Executors.defaultThreadFactory());
+		try {
+			List<Future<String>> futures = pool.invokeAll(tasks(8));
+			Assert.assertEquals(order(futures),
+					Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7));
+			for (Future<String> future : futures) {
+				Assert.assertFalse(future.get().endsWith(
+						Thread.currentThread().getName()));
+			}
+		} finally {
+			pool.close();
+		}
+	}
+
+	@Test
+	public void testFailedTask() throws Exception {
+		ScriptPool pool = new ScriptPool(2, Executors.defaultThreadFactory());
+		try {
+			List<Callable<String>> tasks = tasks(2);
+			tasks.add(1, new Callable<String>() {
+				@Override
+				public String call() {
+					throw new IllegalStateException("script");
+				}
+			});
+			List<Future<String>> futures = pool.invokeAll(tasks);
+			Assert.assertEquals(futures.size(), 3);
+			try {
+				futures.get(1).get();
+				Assert.fail("ExecutionException expected");
+			} catch (ExecutionException e) {
+				Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+			Assert.assertTrue(futures.get(2).get().startsWith("1-"));
+		} finally {
+			pool.close();
+		}
+	}
+
+	/*
+	 * Once the pool is closed with the river the tasks are rejected and run
+	 * by the indexer thread.
+	 */
+	@Test
+	public void testRunInlineAfterClose() throws Exception {
+		ScriptPool pool = new ScriptPool(2, Executors.defaultThreadFactory());
+		pool.close();
+		List<Future<String>> futures = pool.invokeAll(tasks(3));
+		Assert.assertEquals(order(futures), Arrays.asList(0, 1, 2));
+		for (Future<String> future : futures) {
+			Assert.assertTrue(future.get().endsWith(
+					Thread.currentThread().getName()));
+		}
+	}
+
+	/*
+	 * The tasks queued when the pool is closed are run by the calling thread.
+	 */
+	@Test
+	public void testQueuedTasksRunInlineOnClose() throws Exception {
+		final ScriptPool pool = new ScriptPool(1,
+				Executors.defaultThreadFactory());
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Callable<String>> tasks = tasks(2);
+		tasks.add(0, new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				started.countDown();
+				release.await();
+				return "blocking-" + Thread.currentThread().getName();
+			}
+		});
+		final List<List<Future<String>>> results = new ArrayList<List<Future<String>>>();
+		Thread indexer = new Thread("indexer") {
+			@Override
+			public void run() {
+				try {
+					results.add(pool.invokeAll(tasks));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		indexer.start();
+		Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+		pool.close();
+		release.countDown();
+		indexer.join(5000);
+		Assert.assertFalse(indexer.isAlive());
+
+		List<Future<String>> futures = results.get(0);
+		Assert.assertEquals(futures.size(), 3);
+		// interrupted by close
+		try {
+			futures.get(0).get();
+			Assert.fail("ExecutionException expected");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof InterruptedException);
+		}
+		Assert.assertEquals(futures.get(1).get(), "0-indexer");
+		Assert.assertEquals(futures.get(2).get(), "1-indexer");
+	}
+}
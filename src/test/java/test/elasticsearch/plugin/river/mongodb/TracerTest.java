@@ -0,0 +1,83 @@
+package test.elasticsearch.plugin.river.mongodb;
+
+import java.util.Map;
+
+import org.bson.types.BSONTimestamp;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.river.mongodb.Trace;
+import org.elasticsearch.river.mongodb.Tracer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class TracerTest {
+
+	@Test
+	public void testSampleRate() {
+		BSONTimestamp timestamp = new BSONTimestamp(1000, 1);
+		Assert.assertNull(new Tracer(0).sample(timestamp, System.nanoTime()));
+		Trace trace = new Tracer(1).sample(timestamp, System.nanoTime());
+		Assert.assertNotNull(trace);
+		Assert.assertTrue(trace.isFor(new BSONTimestamp(1000, 1)));
+		Assert.assertFalse(trace.isFor(new BSONTimestamp(1000, 2)));
+	}
+
+	@Test
+	public void testPercentiles() {
+		Tracer tracer = new Tracer(1);
+		Assert.assertEquals(tracer.getPercentile(Tracer.BULK_STAGE, 0.5), -1);
+		for (int i = 1; i <= 100; i++) {
+			tracer.record(Tracer.BULK_STAGE, i);
+		}
+		Assert.assertEquals(tracer.getPercentile(Tracer.BULK_STAGE, 0.5), 50);
+		Assert.assertEquals(tracer.getPercentile(Tracer.BULK_STAGE, 0.9), 90);
+		Assert.assertEquals(tracer.getPercentile(Tracer.BULK_STAGE, 0.99), 99);
+		Assert.assertEquals(tracer.getPercentile(Tracer.BULK_STAGE, 1), 100);
+	}
+
+	@Test
+	public void testLastSamples() {
+		Tracer tracer = new Tracer(1, 10);
+		for (int i = 1; i <= 100; i++) {
+			tracer.record(Tracer.QUEUE_STAGE, i);
+		}
+		// only 91 to 100 are kept
+		Assert.assertEquals(tracer.getPercentile(Tracer.QUEUE_STAGE, 0.1), 91);
+	}
+
+	@Test
+	public void testRecordTrace() throws Exception {
+		Tracer tracer = new Tracer(1);
+		Trace trace = tracer.sample(new BSONTimestamp(1000, 1),
+				System.nanoTime());
+		trace.mark(Tracer.CURSOR_STAGE);
+		trace.mark(Tracer.SLURP_STAGE);
+		trace.mark(Tracer.BULK_STAGE);
+		trace.mark(Tracer.BULK_STAGE);
+		tracer.record(trace);
+
+		Map<String, Long> stages = trace.getStages();
+		Assert.assertEquals(stages.size(), 3);
+		long total = 0;
+		for (long nanos : stages.values()) {
+			total += nanos;
+		}
+		Assert.assertEquals(tracer.getPercentile(Tracer.TOTAL_STAGE, 1), total);
+		Assert.assertEquals(tracer.getPercentile(Tracer.BULK_STAGE, 1),
+				(long) stages.get(Tracer.BULK_STAGE));
+		Assert.assertEquals(tracer.getPercentile(Tracer.SCRIPT_STAGE, 1), -1);
+
+		XContentBuilder builder = tracer.toXContent(XContentFactory
+				.jsonBuilder());
+		Map<String, Object> map = XContentFactory.xContent(XContentType.JSON)
+				.createParser(builder.string()).mapAndClose();
+		Assert.assertEquals(XContentMapValues.extractValue("total.count", map),
+				1);
+		Assert.assertNotNull(XContentMapValues.extractValue("total.p99_ms",
+				map));
+		Assert.assertNull(XContentMapValues.extractValue("script.p99_ms", map));
+	}
+}
@@ -0,0 +1,141 @@
+package test.elasticsearch.plugin.river.mongodb.script;
+
+import static org.elasticsearch.client.Requests.countRequest;
+import static org.elasticsearch.index.query.QueryBuilders.fieldQuery;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.count.CountResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.river.mongodb.MongoDBRiverDefinition;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import test.elasticsearch.plugin.river.mongodb.RiverMongoDBTestAsbtract;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+
+/*
+ * Batch script mode (script_mode).
+ */
+@Test
+public class RiverMongoBatchScriptTest extends RiverMongoDBTestAsbtract {
+
+	private static final String TEST_MONGODB_RIVER_WITH_BATCH_SCRIPT_JSON = "/test/elasticsearch/plugin/river/mongodb/script/test-mongodb-river-with-batch-script.json";
+	private static final String GROOVY_SCRIPT_TYPE = "groovy";
+	private static final int DOCUMENTS = 20;
+	private DB mongoDB;
+
+	protected RiverMongoBatchScriptTest() {
+		super("testbatchscriptriver-" + System.currentTimeMillis(),
+				"testbatchscriptdatabase-" + System.currentTimeMillis(),
+				"batchscriptdocuments-" + System.currentTimeMillis(),
+				"testbatchscriptindex-" + System.currentTimeMillis());
+	}
+
+	@BeforeClass
+	public void createDatabase() {
+		logger.debug("createDatabase {}", getDatabase());
+		mongoDB = getMongo().getDB(getDatabase());
+		mongoDB.setWriteConcern(WriteConcern.REPLICAS_SAFE);
+	}
+
+	@AfterClass
+	public void cleanUp() {
+		logger.info("Drop database " + mongoDB.getName());
+		mongoDB.dropDatabase();
+	}
+
+	@Test
+	public void testBatchScript() throws Throwable {
+		String river = "testbatchscriptriver-" + System.currentTimeMillis();
+		String index = "testbatchscriptindex-" + System.currentTimeMillis();
+		DBCollection collection = mongoDB.createCollection(river, null);
+		try {
+			createRiver(river, collection,
+					"ctxs.each { it.document.score = 200 }",
+					MongoDBRiverDefinition.SCRIPT_MODE_BATCH, 1, index);
+			List<DBObject> documents = insert(collection, DOCUMENTS);
+			Thread.sleep(wait);
+			refreshIndex(index);
+
+			for (DBObject document : documents) {
+				Map<String, Object> source = getSource(index, document);
+				assertThat(source.get("score").toString(), equalTo("200"));
+			}
+		} finally {
+			super.deleteRiver(river);
+			super.deleteIndex(index);
+		}
+	}
+
+	@Test
+	public void testMalformedBatchResult() throws Throwable {
+		String river = "testmalformedbatchriver-" + System.currentTimeMillis();
+		String index = "testmalformedbatchindex-" + System.currentTimeMillis();
+		DBCollection collection = mongoDB.createCollection(river, null);
+		try {
+			// a string instead of a context for each document
+			createRiver(river, collection, "ctxs.collect { 'ignored' }",
+					MongoDBRiverDefinition.SCRIPT_MODE_BATCH, 1, index);
+			List<DBObject> documents = insert(collection, DOCUMENTS);
+			Thread.sleep(wait);
+			// the indexer is still running
+			documents.addAll(insert(collection, DOCUMENTS));
+			Thread.sleep(wait);
+			refreshIndex(index);
+
+			// indexed as if there was no script
+			CountResponse countResponse = getNode().client()
+					.count(countRequest(index)).actionGet();
+			assertThat(countResponse.getCount(), equalTo(2l * DOCUMENTS));
+			for (DBObject document : documents) {
+				Assert.assertFalse(getSource(index, document).containsKey(
+						"score"));
+			}
+		} finally {
+			super.deleteRiver(river);
+			super.deleteIndex(index);
+		}
+	}
+
+	private void createRiver(String river, DBCollection collection,
+			String script, String scriptMode, int scriptThreads, String index)
+			throws Exception {
+		super.createRiver(TEST_MONGODB_RIVER_WITH_BATCH_SCRIPT_JSON, river,
+				String.valueOf(getMongoPort1()),
+				String.valueOf(getMongoPort2()),
+				String.valueOf(getMongoPort3()), getDatabase(),
+				collection.getName(), GROOVY_SCRIPT_TYPE, script, scriptMode,
+				String.valueOf(scriptThreads), index, getDatabase());
+	}
+
+	private List<DBObject> insert(DBCollection collection, int count) {
+		List<DBObject> documents = new ArrayList<DBObject>();
+		for (int i = 0; i < count; i++) {
+			DBObject document = new BasicDBObject("name", "document-" + i)
+					.append("version", 0);
+			collection.insert(document);
+			documents.add(document);
+		}
+		return documents;
+	}
+
+	private Map<String, Object> getSource(String index, DBObject document) {
+		SearchResponse sr = getNode().client().prepareSearch(index)
+				.setQuery(fieldQuery("_id", document.get("_id").toString()))
+				.execute().actionGet();
+		assertThat(sr.getHits().getTotalHits(), equalTo(1l));
+		return sr.getHits().getHits()[0].sourceAsMap();
+	}
+}
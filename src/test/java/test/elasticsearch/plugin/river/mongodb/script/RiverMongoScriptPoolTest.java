@@ -0,0 +1,118 @@
+package test.elasticsearch.plugin.river.mongodb.script;
+
+import static org.elasticsearch.index.query.QueryBuilders.fieldQuery;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import test.elasticsearch.plugin.river.mongodb.RiverMongoDBTestAsbtract;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+
+/*
+ * Script pool (script_threads).
+ */
+@Test
+public class RiverMongoScriptPoolTest extends RiverMongoDBTestAsbtract {
+
+	private static final String TEST_MONGODB_RIVER_WITH_SCRIPT_THREADS_JSON = "/test/elasticsearch/plugin/river/mongodb/script/test-mongodb-river-with-script-threads.json";
+	private static final String GROOVY_SCRIPT_TYPE = "groovy";
+	private static final int DOCUMENTS = 20;
+	private DB mongoDB;
+
+	protected RiverMongoScriptPoolTest() {
+		super("testscriptpoolriver-" + System.currentTimeMillis(),
+				"testscriptpooldatabase-" + System.currentTimeMillis(),
+				"scriptpooldocuments-" + System.currentTimeMillis(),
+				"testscriptpoolindex-" + System.currentTimeMillis());
+	}
+
+	@BeforeClass
+	public void createDatabase() {
+		logger.debug("createDatabase {}", getDatabase());
+		mongoDB = getMongo().getDB(getDatabase());
+		mongoDB.setWriteConcern(WriteConcern.REPLICAS_SAFE);
+	}
+
+	@AfterClass
+	public void cleanUp() {
+		logger.info("Drop database " + mongoDB.getName());
+		mongoDB.dropDatabase();
+	}
+
+	/*
+	 * The documents transformed by the script pool are indexed in the order
+	 * of the oplog: the last update of each document wins.
+	 */
+	@Test
+	public void testScriptPoolOrder() throws Throwable {
+		String river = "testscriptpoolriver-" + System.currentTimeMillis();
+		String index = "testscriptpoolindex-" + System.currentTimeMillis();
+		DBCollection collection = mongoDB.createCollection(river, null);
+		try {
+			createRiver(river, collection,
+					"ctx.document.score = ctx.document.version * 10", 4, index);
+			List<DBObject> documents = insert(collection, DOCUMENTS);
+			for (int version = 1; version <= 5; version++) {
+				for (DBObject document : documents) {
+					collection.update(
+							new BasicDBObject("_id", document.get("_id")),
+							new BasicDBObject("$set", new BasicDBObject(
+									"version", version)));
+				}
+			}
+			Thread.sleep(wait);
+			refreshIndex(index);
+
+			for (DBObject document : documents) {
+				Map<String, Object> source = getSource(index, document);
+				assertThat(source.get("version").toString(), equalTo("5"));
+				assertThat(source.get("score").toString(), equalTo("50"));
+			}
+		} finally {
+			super.deleteRiver(river);
+			super.deleteIndex(index);
+		}
+	}
+
+	private void createRiver(String river, DBCollection collection,
+			String script, int scriptThreads, String index) throws Exception {
+		super.createRiver(TEST_MONGODB_RIVER_WITH_SCRIPT_THREADS_JSON, river,
+				String.valueOf(getMongoPort1()),
+				String.valueOf(getMongoPort2()),
+				String.valueOf(getMongoPort3()), getDatabase(),
+				collection.getName(), GROOVY_SCRIPT_TYPE, script,
+				String.valueOf(scriptThreads), index, getDatabase());
+	}
+
+	private List<DBObject> insert(DBCollection collection, int count) {
+		List<DBObject> documents = new ArrayList<DBObject>();
+		for (int i = 0; i < count; i++) {
+			DBObject document = new BasicDBObject("name", "document-" + i)
+					.append("version", 0);
+			collection.insert(document);
+			documents.add(document);
+		}
+		return documents;
+	}
+
+	private Map<String, Object> getSource(String index, DBObject document) {
+		SearchResponse sr = getNode().client().prepareSearch(index)
+				.setQuery(fieldQuery("_id", document.get("_id").toString()))
+				.execute().actionGet();
+		assertThat(sr.getHits().getTotalHits(), equalTo(1l));
+		return sr.getHits().getHits()[0].sourceAsMap();
+	}
+}
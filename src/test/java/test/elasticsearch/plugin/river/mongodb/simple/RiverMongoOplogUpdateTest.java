@@ -0,0 +1,121 @@
+package test.elasticsearch.plugin.river.mongodb.simple;
+
+import static org.elasticsearch.index.query.QueryBuilders.fieldQuery;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.Map;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import test.elasticsearch.plugin.river.mongodb.RiverMongoDBTestAsbtract;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+
+/*
+ * Updates applied from the oplog (options.update_strategy: oplog).
+ */
+@Test
+public class RiverMongoOplogUpdateTest extends RiverMongoDBTestAsbtract {
+
+	private static final String TEST_MONGODB_RIVER_OPLOG_UPDATE_JSON = "/test/elasticsearch/plugin/river/mongodb/simple/test-simple-mongodb-river-oplog-update.json";
+	private DB mongoDB;
+	private DBCollection mongoCollection;
+
+	protected RiverMongoOplogUpdateTest() {
+		super("oplog-update-river-" + System.currentTimeMillis(),
+				"oplog-update-db-" + System.currentTimeMillis(),
+				"oplog-update-collection-" + System.currentTimeMillis(),
+				"oplog-update-index-" + System.currentTimeMillis());
+	}
+
+	@BeforeClass
+	public void createDatabase() {
+		logger.debug("createDatabase {}", getDatabase());
+		try {
+			mongoDB = getMongo().getDB(getDatabase());
+			mongoDB.setWriteConcern(WriteConcern.REPLICAS_SAFE);
+			super.createRiver(TEST_MONGODB_RIVER_OPLOG_UPDATE_JSON,
+					getRiver(), String.valueOf(getMongoPort1()),
+					String.valueOf(getMongoPort2()),
+					String.valueOf(getMongoPort3()), getDatabase(),
+					getCollection(), getIndex());
+			mongoCollection = mongoDB.createCollection(getCollection(), null);
+			Assert.assertNotNull(mongoCollection);
+		} catch (Throwable t) {
+			logger.error("createDatabase failed.", t);
+		}
+	}
+
+	@AfterClass
+	public void cleanUp() {
+		super.deleteRiver();
+		logger.info("Drop database " + mongoDB.getName());
+		mongoDB.dropDatabase();
+	}
+
+	@Test
+	public void testSetUpdate() throws Throwable {
+		DBObject document = new BasicDBObject("name", "document")
+				.append("version", 0);
+		mongoCollection.insert(document);
+		mongoCollection.update(new BasicDBObject("_id", document.get("_id")),
+				new BasicDBObject("$set", new BasicDBObject("version", 1)));
+		Thread.sleep(wait);
+		refreshIndex();
+
+		Map<String, Object> source = getSource(document);
+		assertThat(source.get("name").toString(), equalTo("document"));
+		assertThat(source.get("version").toString(), equalTo("1"));
+	}
+
+	/*
+	 * A partial update of a document missing from the index fetches the
+	 * whole document.
+	 */
+	@Test
+	public void testUpdateMissingDocument() throws Throwable {
+		DBObject document = new BasicDBObject("name", "missing").append(
+				"version", 0);
+		mongoCollection.insert(document);
+		Thread.sleep(wait);
+		refreshIndex();
+		getSource(document);
+
+		getNode().client()
+				.prepareDelete(getIndex(), getDatabase(),
+						document.get("_id").toString()).execute().actionGet();
+		refreshIndex();
+		SearchResponse sr = search(document);
+		assertThat(sr.getHits().getTotalHits(), equalTo(0l));
+
+		mongoCollection.update(new BasicDBObject("_id", document.get("_id")),
+				new BasicDBObject("$set", new BasicDBObject("version", 1)));
+		Thread.sleep(wait);
+		refreshIndex();
+
+		Map<String, Object> source = getSource(document);
+		assertThat(source.get("name").toString(), equalTo("missing"));
+		assertThat(source.get("version").toString(), equalTo("1"));
+	}
+
+	private SearchResponse search(DBObject document) {
+		return getNode().client().prepareSearch(getIndex())
+				.setQuery(fieldQuery("_id", document.get("_id").toString()))
+				.execute().actionGet();
+	}
+
+	private Map<String, Object> getSource(DBObject document) {
+		SearchResponse sr = search(document);
+		assertThat(sr.getHits().getTotalHits(), equalTo(1l));
+		return sr.getHits().getHits()[0].sourceAsMap();
+	}
+}
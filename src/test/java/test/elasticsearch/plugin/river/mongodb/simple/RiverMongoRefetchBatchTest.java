@@ -0,0 +1,110 @@
+package test.elasticsearch.plugin.river.mongodb.simple;
+
+import static org.elasticsearch.index.query.QueryBuilders.fieldQuery;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.search.SearchResponse;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import test.elasticsearch.plugin.river.mongodb.RiverMongoDBTestAsbtract;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+
+/*
+ * Updates fetched with a single $in query (options.refetch_batch_size).
+ */
+@Test
+public class RiverMongoRefetchBatchTest extends RiverMongoDBTestAsbtract {
+
+	private static final String TEST_MONGODB_RIVER_REFETCH_BATCH_JSON = "/test/elasticsearch/plugin/river/mongodb/simple/test-simple-mongodb-river-refetch-batch.json";
+	private static final int DOCUMENTS = 50;
+	private DB mongoDB;
+	private DBCollection mongoCollection;
+
+	protected RiverMongoRefetchBatchTest() {
+		super("refetch-batch-river-" + System.currentTimeMillis(),
+				"refetch-batch-db-" + System.currentTimeMillis(),
+				"refetch-batch-collection-" + System.currentTimeMillis(),
+				"refetch-batch-index-" + System.currentTimeMillis());
+	}
+
+	@BeforeClass
+	public void createDatabase() {
+		logger.debug("createDatabase {}", getDatabase());
+		try {
+			mongoDB = getMongo().getDB(getDatabase());
+			mongoDB.setWriteConcern(WriteConcern.REPLICAS_SAFE);
+			super.createRiver(TEST_MONGODB_RIVER_REFETCH_BATCH_JSON,
+					getRiver(), String.valueOf(getMongoPort1()),
+					String.valueOf(getMongoPort2()),
+					String.valueOf(getMongoPort3()), "10", getDatabase(),
+					getCollection(), getIndex());
+			mongoCollection = mongoDB.createCollection(getCollection(), null);
+			Assert.assertNotNull(mongoCollection);
+		} catch (Throwable t) {
+			logger.error("createDatabase failed.", t);
+		}
+	}
+
+	@AfterClass
+	public void cleanUp() {
+		super.deleteRiver();
+		logger.info("Drop database " + mongoDB.getName());
+		mongoDB.dropDatabase();
+	}
+
+	/*
+	 * Documents updated several times within a batch, and a document
+	 * deleted after its update, are indexed in their final state.
+	 */
+	@Test
+	public void testUpdatesInBatches() throws Throwable {
+		List<DBObject> documents = new ArrayList<DBObject>();
+		for (int i = 0; i < DOCUMENTS; i++) {
+			DBObject document = new BasicDBObject("name", "document-" + i)
+					.append("version", 0);
+			mongoCollection.insert(document);
+			documents.add(document);
+		}
+		for (int version = 1; version <= 3; version++) {
+			for (DBObject document : documents) {
+				mongoCollection.update(
+						new BasicDBObject("_id", document.get("_id")),
+						new BasicDBObject("$set", new BasicDBObject("version",
+								version)));
+			}
+		}
+		DBObject deleted = documents.remove(0);
+		mongoCollection.update(new BasicDBObject("_id", deleted.get("_id")),
+				new BasicDBObject("$set", new BasicDBObject("version", 4)));
+		mongoCollection.remove(new BasicDBObject("_id", deleted.get("_id")));
+		Thread.sleep(wait);
+		refreshIndex();
+
+		for (DBObject document : documents) {
+			SearchResponse sr = getNode().client().prepareSearch(getIndex())
+					.setQuery(fieldQuery("_id", document.get("_id").toString()))
+					.execute().actionGet();
+			assertThat(sr.getHits().getTotalHits(), equalTo(1l));
+			Map<String, Object> source = sr.getHits().getHits()[0]
+					.sourceAsMap();
+			assertThat(source.get("version").toString(), equalTo("3"));
+		}
+		SearchResponse sr = getNode().client().prepareSearch(getIndex())
+				.setQuery(fieldQuery("_id", deleted.get("_id").toString()))
+				.execute().actionGet();
+		assertThat(sr.getHits().getTotalHits(), equalTo(0l));
+	}
+}